@@ -1,14 +1,25 @@
-
 #!/bin/bash
+# Run the JMH benchmarks in src/test/java, for example:
+#   ./scripts/benchmark.sh                       every benchmark
+#   ./scripts/benchmark.sh BenchmarkStringSearch  only the benchmarks matching a regex
+# Other arguments go to JMH, see `./scripts/benchmark.sh -h`
+
+set -e
 
 # Compile the benchmark
-mvn test-compile
+mvn -q test-compile
 
 # Emit the dependencies classpath
-mvn dependency:build-classpath -DincludeScope=test -Dmdep.outputFile=scripts/classpath.txt
+mvn -q dependency:build-classpath -DincludeScope=test -Dmdep.outputFile=scripts/classpath.txt
 
-# Run the benchmark
-java -cp $(cat scripts/classpath.txt):target/classes:target/test-classes --illegal-access=warn org.openjdk.jmh.Main BenchmarkPruner
+# The forked benchmark JVMs use javac internals, like the tests do
+EXPORTS="--add-opens jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED"
+for p in code comp main tree model util; do
+    EXPORTS="$EXPORTS --add-exports jdk.compiler/com.sun.tools.javac.$p=ALL-UNNAMED"
+done
 
-# Clean up
-rm scripts/classpath.txt
\ No newline at end of file
+trap "rm -f scripts/classpath.txt" EXIT
+
+# Run the benchmark
+java -cp $(cat scripts/classpath.txt):target/classes:target/test-classes org.openjdk.jmh.Main \
+    -jvmArgsAppend "$EXPORTS" "${@:-Benchmark}"
@@ -0,0 +1,133 @@
+package org.javacs;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/** Access levels from the narrowest to the widest, read from the modifiers in a parsed file */
+enum Access {
+    PRIVATE,
+    PACKAGE,
+    PROTECTED,
+    PUBLIC;
+
+    Access narrowest(Access other) {
+        return compareTo(other) <= 0 ? this : other;
+    }
+
+    Access widest(Access other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+
+    /**
+     * The access of type `className` declared in `root`, narrowed by the access of every type that encloses it.
+     * PUBLIC if `root` doesn't declare `className`, because nothing is known about it.
+     */
+    static Access ofType(CompilationUnitTree root, String className) {
+        var find = new FindAccess(className, null);
+        find.scan(root, null);
+        return find.type == null ? PUBLIC : find.type;
+    }
+
+    /**
+     * The widest access of the members called `memberName` in type `className`, overloads can differ. Constructors
+     * are found by the simple name of the type. PUBLIC if `root` doesn't declare them, like default constructors.
+     */
+    static Access ofMember(CompilationUnitTree root, String className, String memberName) {
+        var find = new FindAccess(className, memberName);
+        find.scan(root, null);
+        return find.member == null ? PUBLIC : find.member;
+    }
+
+    private static Access of(ModifiersTree modifiers, boolean implicitlyPublic) {
+        var flags = modifiers.getFlags();
+        if (flags.contains(Modifier.PUBLIC)) return PUBLIC;
+        if (flags.contains(Modifier.PROTECTED)) return PROTECTED;
+        if (flags.contains(Modifier.PRIVATE)) return PRIVATE;
+        return implicitlyPublic ? PUBLIC : PACKAGE;
+    }
+
+    private static class FindAccess extends TreeScanner<Void, Void> {
+        private final String className, memberName;
+        private final List<CharSequence> qualifiedName = new ArrayList<>();
+        /** The access of the enclosing types so far, and whether their members are public without a modifier */
+        private Access enclosing = PUBLIC;
+        private boolean inInterface;
+        Access type, member;
+
+        FindAccess(String className, String memberName) {
+            this.className = className;
+            this.memberName = memberName;
+        }
+
+        @Override
+        public Void visitCompilationUnit(CompilationUnitTree root, Void __) {
+            qualifiedName.add(Objects.toString(root.getPackageName(), ""));
+            return super.visitCompilationUnit(root, __);
+        }
+
+        @Override
+        public Void visitClass(ClassTree t, Void __) {
+            // Local and anonymous classes can't be looked up by name
+            if (t.getSimpleName().length() == 0) return null;
+            var access = enclosing.narrowest(of(t.getModifiers(), inInterface));
+            qualifiedName.add(t.getSimpleName());
+            var name = String.join(".", qualifiedName).replaceFirst("^\\.", "");
+            var kind = t.getKind();
+            var interfaceLike = kind == Tree.Kind.INTERFACE || kind == Tree.Kind.ANNOTATION_TYPE;
+            if (name.equals(className)) {
+                type = access;
+                if (memberName != null) {
+                    findMembers(t, interfaceLike, kind == Tree.Kind.ENUM);
+                }
+            }
+            var saveEnclosing = enclosing;
+            var saveInInterface = inInterface;
+            enclosing = access;
+            inInterface = interfaceLike;
+            for (var m : t.getMembers()) {
+                if (m instanceof ClassTree) {
+                    scan(m, null);
+                }
+            }
+            enclosing = saveEnclosing;
+            inInterface = saveInInterface;
+            qualifiedName.remove(qualifiedName.size() - 1);
+            return null;
+        }
+
+        private void findMembers(ClassTree t, boolean interfaceLike, boolean isEnum) {
+            var isConstructor = t.getSimpleName().contentEquals(memberName);
+            for (var m : t.getMembers()) {
+                Access found = null;
+                if (m instanceof MethodTree) {
+                    var method = (MethodTree) m;
+                    var name = method.getName();
+                    if (name.contentEquals(memberName) || (isConstructor && name.contentEquals("<init>"))) {
+                        found = of(method.getModifiers(), interfaceLike);
+                    }
+                } else if (m instanceof VariableTree) {
+                    var field = (VariableTree) m;
+                    if (field.getName().contentEquals(memberName)) {
+                        var constant = isEnum && (((JCTree.JCModifiers) field.getModifiers()).flags & Flags.ENUM) != 0;
+                        found = of(field.getModifiers(), interfaceLike || constant);
+                    }
+                }
+                if (found != null) {
+                    member = member == null ? found : member.widest(found);
+                }
+            }
+        }
+    }
+}
@@ -2,12 +2,27 @@ package org.javacs;
 
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongBiFunction;
+import java.util.logging.Logger;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, every mapping of the file expires. The
+ * total weight of the values is bounded, and the least recently used mappings are evicted to stay under it.
+ */
 class Cache<K, V> {
+    static final long DEFAULT_MAX_WEIGHT = 100_000;
+
     private static class Key<K> {
         final Path file;
         final K key;
@@ -32,43 +47,151 @@ class Cache<K, V> {
 
     private class Value {
         final V value;
+        final long weight;
         final Instant created = Instant.now();
 
-        Value(V value) {
+        Value(V value, long weight) {
             this.value = value;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key, Value> map = new HashMap<>();
+    /** Every cache that is still in use, so a changed file can be forgotten by all of them */
+    private static final Set<Cache<?, ?>> all = Collections.newSetFromMap(new WeakHashMap<>());
+    private static final Logger LOG = Logger.getLogger("main");
+
+    private final String name;
+    private final long maxWeight;
+    private final ToLongBiFunction<K, V> weigher;
+    /** In access order, so the eldest mapping is the least recently used */
+    private final LinkedHashMap<Key<K>, Value> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Set<Key<K>>> keysByFile = new HashMap<>();
+    private long weight, hits, misses, evictions;
 
-    boolean has(Path file, K k) {
-        return !needs(file, k);
+    /** A cache whose values weigh at most `maxWeight` in total, as measured by `weigher`, logged as `name` */
+    Cache(String name, long maxWeight, ToLongBiFunction<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive, was " + maxWeight);
+        }
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        synchronized (all) {
+            all.add(this);
+        }
     }
 
-    boolean needs(Path file, K k) {
-        // If key is not in map, it needs to be loaded
-        var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) return true;
+    /** Forget every mapping of `file` in every cache, when it was changed or deleted */
+    static void invalidateAll(Path file) {
+        for (var cache : caches()) {
+            cache.invalidate(file);
+        }
+    }
 
-        // If key was loaded before file was last modified, it needs to be reloaded
-        var value = map.get(key);
+    /** Log the size, hits, misses and evictions of every cache */
+    static void logStatistics() {
+        for (var cache : caches()) {
+            LOG.info(cache.toString());
+        }
+    }
+
+    private static List<Cache<?, ?>> caches() {
+        synchronized (all) {
+            return new ArrayList<>(all);
+        }
+    }
+
+    /**
+     * The value of `k` in `file`, calling `loader` when it is missing or expired. The loader runs without holding the
+     * cache, so two threads may both load the same value.
+     */
+    V get(Path file, K k, Supplier<V> loader) {
         var modified = FileStore.modified(file);
-        // TODO remove all keys associated with file when file changes
-        return value.created.isBefore(modified);
+        synchronized (this) {
+            var value = fresh(new Key<>(file, k), modified);
+            if (value != null) {
+                hits++;
+                return value.value;
+            }
+            misses++;
+        }
+        var v = loader.get();
+        load(file, k, v);
+        return v;
     }
 
-    void load(Path file, K k, V v) {
-        // TODO limit total size of cache
+    private synchronized void load(Path file, K k, V v) {
         var key = new Key<K>(file, k);
-        var value = new Value(v);
-        map.put(key, value);
+        var value = new Value(v, weigher.applyAsLong(k, v));
+        var before = map.put(key, value);
+        if (before != null) {
+            weight -= before.weight;
+        }
+        weight += value.weight;
+        keysByFile.computeIfAbsent(file, f -> new HashSet<>()).add(key);
+        evict();
     }
 
-    V get(Path file, K k) {
-        var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) {
-            throw new IllegalArgumentException(k + " is not in map " + map);
+    /** Forget every mapping of `file` */
+    synchronized void invalidate(Path file) {
+        var keys = keysByFile.remove(file);
+        if (keys == null) return;
+        for (var key : keys) {
+            weight -= map.remove(key).weight;
+        }
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Cache %s(size=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d)", name, map.size(),
+                weight, maxWeight, hits, misses, evictions);
+    }
+
+    /** The mapping of `key` if it was loaded after `modified`, expired mappings of the file are dropped on the way */
+    private Value fresh(Key<K> key, Instant modified) {
+        var value = map.get(key);
+        if (value == null) return null;
+        // If key was loaded before file was last modified, the file changed and all its keys need to be reloaded
+        if (value.created.isBefore(modified)) {
+            invalidate(key.file);
+            return null;
+        }
+        return value;
+    }
+
+    private void evict() {
+        var eldest = map.entrySet().iterator();
+        // Always keep the newest mapping, even when it is heavier than the whole cache
+        while (weight > maxWeight && map.size() > 1) {
+            var entry = eldest.next();
+            eldest.remove();
+            weight -= entry.getValue().weight;
+            evictions++;
+            var keys = keysByFile.get(entry.getKey().file);
+            keys.remove(entry.getKey());
+            if (keys.isEmpty()) {
+                keysByFile.remove(entry.getKey().file);
+            }
         }
-        return map.get(key).value;
     }
 }
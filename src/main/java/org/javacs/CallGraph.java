@@ -0,0 +1,615 @@
+package org.javacs;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * The method-level reverse call graph of a whole workspace. It is computed once with javac, counting the same
+ * references {@link IndexReferences} does, and saved to a compact binary file: a table of interned strings followed by
+ * int arrays, with the callers of every member as adjacency lists. A loaded graph answers
+ * {@link JavaFindReference#findLeafReferences} without compiling anything, for the tree it was exported from.
+ */
+class CallGraph {
+    private static final int MAGIC = 0x4a465247;
+    private static final int VERSION = 1;
+    /** Compile this many files at a time while exporting, so the trees of the whole workspace are never in memory */
+    private static final int FILES_PER_BATCH = 100;
+    private static final Logger LOG = Logger.getLogger("main");
+
+    private static final byte OTHER = 0, METHOD = 1, CONSTRUCTOR = 2, FIELD = 3;
+
+    private final String[] strings;
+    /** `ClassName::member` of every member, as the index of a string */
+    private final int[] keys;
+    /** `ClassName::member(erasedParams)` of every member, which tells overloads apart */
+    private final int[] symbols;
+    private final byte[] kinds;
+    /** The file that declares every member, -1 when it was only seen referenced */
+    private final int[] files;
+    /** Start line, start column, end line and end column of every member, all 0 when it has no source */
+    private final int[] ranges;
+    /** The callers of member `m` are `callers[callerStart[m]]` up to `callers[callerStart[m + 1]]` */
+    private final int[] callerStart, callers;
+    /**
+     * The direct subtypes of type `typeNames[t]` are `subtypes[subtypeStart[t]]` up to
+     * `subtypes[subtypeStart[t + 1]]`
+     */
+    private final int[] typeNames, subtypeStart, subtypes;
+
+    private final Map<String, List<Integer>> membersByFile = new HashMap<>();
+    private final Map<String, Integer> typeIds = new HashMap<>();
+
+    private CallGraph(String[] strings, int[] keys, int[] symbols, byte[] kinds, int[] files, int[] ranges,
+            int[] callerStart, int[] callers, int[] typeNames, int[] subtypeStart, int[] subtypes) {
+        this.strings = strings;
+        this.keys = keys;
+        this.symbols = symbols;
+        this.kinds = kinds;
+        this.files = files;
+        this.ranges = ranges;
+        this.callerStart = callerStart;
+        this.callers = callers;
+        this.typeNames = typeNames;
+        this.subtypeStart = subtypeStart;
+        this.subtypes = subtypes;
+        for (var m = 0; m < keys.length; m++) {
+            if (files[m] != -1) {
+                membersByFile.computeIfAbsent(strings[files[m]], k -> new ArrayList<>()).add(m);
+            }
+        }
+        for (var t = 0; t < typeNames.length; t++) {
+            typeIds.put(strings[typeNames[t]], t);
+        }
+    }
+
+    int members() {
+        return keys.length;
+    }
+
+    int calls() {
+        return callers.length;
+    }
+
+    /** Compile every file of the workspace and record who refers to each member */
+    static CallGraph build(JavaCompilerService compiler) {
+        var started = System.nanoTime();
+        var builder = new Builder();
+        var all = new ArrayList<>(FileStore.all());
+        for (var i = 0; i < all.size(); i += FILES_PER_BATCH) {
+            var batch = all.subList(i, Math.min(all.size(), i + FILES_PER_BATCH));
+            try (var task = compiler.compile(batch.toArray(Path[]::new))) {
+                for (var root : task.roots) {
+                    new IndexCalls(task.task, root, builder).scan(root, null);
+                }
+            }
+            LOG.info(String.format("Indexed calls in %d of %d files", Math.min(all.size(), i + FILES_PER_BATCH),
+                    all.size()));
+        }
+        var graph = builder.build();
+        LOG.info(String.format("Built call graph of %d members and %d calls in %d ms", graph.members(),
+                graph.calls(), (System.nanoTime() - started) / 1000000));
+        return graph;
+    }
+
+    void save(Path file) {
+        try {
+            var dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            var tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.length);
+                for (var s : strings) {
+                    out.writeUTF(s);
+                }
+                for (var ints : List.of(keys, symbols, files, ranges, callerStart, callers, typeNames, subtypeStart,
+                        subtypes)) {
+                    writeInts(out, ints);
+                }
+                out.writeInt(kinds.length);
+                out.write(kinds);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static CallGraph load(Path file) {
+        var started = System.nanoTime();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException(file + " is not a call graph of version " + VERSION);
+            }
+            var strings = new String[in.readInt()];
+            for (var i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            var keys = readInts(in);
+            var symbols = readInts(in);
+            var files = readInts(in);
+            var ranges = readInts(in);
+            var callerStart = readInts(in);
+            var callers = readInts(in);
+            var typeNames = readInts(in);
+            var subtypeStart = readInts(in);
+            var subtypes = readInts(in);
+            var kinds = new byte[in.readInt()];
+            in.readFully(kinds);
+            var graph = new CallGraph(strings, keys, symbols, kinds, files, ranges, callerStart, callers, typeNames,
+                    subtypeStart, subtypes);
+            LOG.info(String.format("Loaded call graph of %d members and %d calls from %s in %d ms", graph.members(),
+                    graph.calls(), file, (System.nanoTime() - started) / 1000000));
+            return graph;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        out.writeInt(ints.length);
+        for (var i : ints) {
+            out.writeInt(i);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        var ints = new int[in.readInt()];
+        for (var i = 0; i < ints.length; i++) {
+            ints[i] = in.readInt();
+        }
+        return ints;
+    }
+
+    /** Same as {@link JavaFindReference#findLeafReferences(List, List, int)}, from the graph alone */
+    Set<String> findLeafReferences(List<FilePosition> positions, List<String> specialMethods, int depth) {
+        var starts = new LinkedHashSet<Integer>();
+        for (var p : positions) {
+            var owner = owner(p);
+            if (owner != -1) {
+                starts.add(owner);
+            }
+        }
+        var leafMethods = new TreeSet<String>();
+        for (var start : starts) {
+            leafMethods.addAll(leafMethods(start, specialMethods, depth));
+        }
+        return leafMethods;
+    }
+
+    /** Same as {@link JavaFindReference#findLeafReferencesBatch}, from the graph alone */
+    Map<FilePosition, Set<String>> findLeafReferencesBatch(List<FilePosition> positions, List<String> specialMethods,
+            int depth) {
+        var result = new LinkedHashMap<FilePosition, Set<String>>();
+        for (var p : positions) {
+            result.put(p, findLeafReferences(List.of(p), specialMethods, depth));
+        }
+        return result;
+    }
+
+    /**
+     * The innermost method around `position`, or else the innermost field. Like javac positions, a member starts at
+     * its modifiers and ends after its last character.
+     */
+    private int owner(FilePosition position) {
+        var members = membersByFile.getOrDefault(position.path.toAbsolutePath().normalize().toString(), List.of());
+        var found = -1;
+        for (var m : members) {
+            if (kinds[m] == OTHER || !contains(m, position.line, position.character)) continue;
+            if (found == -1 || isMethod(m) && !isMethod(found)
+                    || isMethod(m) == isMethod(found) && encloses(found, m)) {
+                found = m;
+            }
+        }
+        return found;
+    }
+
+    private boolean isMethod(int m) {
+        return kinds[m] == METHOD || kinds[m] == CONSTRUCTOR;
+    }
+
+    private boolean contains(int m, int line, int column) {
+        var r = m * 4;
+        return compare(ranges[r], ranges[r + 1], line, column) <= 0
+                && compare(line, column, ranges[r + 2], ranges[r + 3]) < 0;
+    }
+
+    private boolean encloses(int outer, int inner) {
+        var o = outer * 4;
+        var i = inner * 4;
+        return compare(ranges[o], ranges[o + 1], ranges[i], ranges[i + 1]) <= 0;
+    }
+
+    private static int compare(int line1, int column1, int line2, int column2) {
+        return line1 != line2 ? Integer.compare(line1, line2) : Integer.compare(column1, column2);
+    }
+
+    /** Walk the callers breadth first, like {@link ReferenceWalker#leaves}, and name the leaves that are methods */
+    private Set<String> leafMethods(int start, List<String> specialMethods, int depth) {
+        var found = new TreeSet<String>();
+        var visited = new HashSet<Integer>();
+        var queue = new ArrayDeque<Integer>();
+        var remaining = new ArrayDeque<Integer>();
+        visited.add(start);
+        queue.add(start);
+        remaining.add(depth);
+        while (!queue.isEmpty()) {
+            var m = queue.poll();
+            var left = remaining.poll();
+            if (left == 0) {
+                continue;
+            }
+            if (callerStart[m] == callerStart[m + 1]) {
+                if (kinds[m] == METHOD) {
+                    found.addAll(leafMethod(strings[keys[m]], specialMethods));
+                }
+                continue;
+            }
+            for (var i = callerStart[m]; i < callerStart[m + 1]; i++) {
+                if (visited.add(callers[i])) {
+                    queue.add(callers[i]);
+                    remaining.add(left - 1);
+                }
+            }
+        }
+        return found;
+    }
+
+    /** A special method stands for its whole class and every subclass, like setUp in a test */
+    private List<String> leafMethod(String key, List<String> specialMethods) {
+        if (specialMethods.stream().noneMatch(key::endsWith)) {
+            return List.of(key);
+        }
+        var className = key.substring(0, key.lastIndexOf("::"));
+        var impactClasses = new ArrayList<String>();
+        impactClasses.add(className);
+        var queue = new ArrayDeque<String>();
+        queue.add(className);
+        while (!queue.isEmpty()) {
+            var t = typeIds.get(queue.poll());
+            if (t == null) continue;
+            for (var i = subtypeStart[t]; i < subtypeStart[t + 1]; i++) {
+                var subtype = strings[subtypes[i]];
+                if (!impactClasses.contains(subtype)) {
+                    impactClasses.add(subtype);
+                    queue.add(subtype);
+                }
+            }
+        }
+        return impactClasses;
+    }
+
+    /** The graph while it is being computed, with every string interned and every member numbered */
+    private static class Builder {
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> memberIds = new HashMap<>();
+        final List<Integer> keys = new ArrayList<>(), symbols = new ArrayList<>(), files = new ArrayList<>();
+        final List<Byte> kinds = new ArrayList<>();
+        final List<int[]> ranges = new ArrayList<>();
+        final List<Set<Integer>> callers = new ArrayList<>();
+        /** Members that are looked up like ReferenceProvider does for default constructors */
+        final Set<Integer> noArgConstructors = new HashSet<>();
+        final Map<String, Set<Integer>> publicMethods = new HashMap<>();
+        final Set<String> types = new LinkedHashSet<>();
+
+        int intern(String s) {
+            return stringIds.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        int member(String symbol, String key) {
+            return memberIds.computeIfAbsent(symbol, k -> {
+                keys.add(intern(key));
+                symbols.add(intern(symbol));
+                files.add(-1);
+                kinds.add(OTHER);
+                ranges.add(new int[4]);
+                callers.add(new HashSet<>());
+                return keys.size() - 1;
+            });
+        }
+
+        void declare(int m, byte kind, String file, int[] range) {
+            kinds.set(m, kind);
+            files.set(m, intern(file));
+            ranges.set(m, range);
+        }
+
+        /**
+         * Changing a default constructor impacts every `new` of the class or a subclass, and their public methods,
+         * see {@link ReferenceProvider}.
+         */
+        void addDefaultConstructorCallers() {
+            for (var m : noArgConstructors) {
+                var key = strings.get(keys.get(m));
+                var className = key.substring(0, key.lastIndexOf("::"));
+                var classes = new ArrayList<String>();
+                classes.add(className);
+                classes.addAll(TypeHierarchy.allSubtypes(className));
+                for (var c : classes) {
+                    var simpleName = c.substring(c.lastIndexOf('.') + 1);
+                    var constructor = memberIds.get(c + "::" + simpleName + "()");
+                    if (constructor != null && constructor.intValue() != m) {
+                        callers.get(m).addAll(callers.get(constructor));
+                    }
+                    callers.get(m).addAll(publicMethods.getOrDefault(c, Set.of()));
+                }
+            }
+        }
+
+        CallGraph build() {
+            addDefaultConstructorCallers();
+            var typeNames = new int[types.size()];
+            var subtypeStart = new int[types.size() + 1];
+            var subtypes = new ArrayList<Integer>();
+            var t = 0;
+            for (var type : types) {
+                typeNames[t] = intern(type);
+                for (var subtype : TypeHierarchy.subtypes(type)) {
+                    subtypes.add(intern(subtype));
+                }
+                subtypeStart[++t] = subtypes.size();
+            }
+            var n = keys.size();
+            var callerStart = new int[n + 1];
+            var allCallers = new ArrayList<Integer>();
+            var flatRanges = new int[n * 4];
+            var flatKinds = new byte[n];
+            for (var m = 0; m < n; m++) {
+                allCallers.addAll(new TreeSet<>(callers.get(m)));
+                callerStart[m + 1] = allCallers.size();
+                System.arraycopy(ranges.get(m), 0, flatRanges, m * 4, 4);
+                flatKinds[m] = kinds.get(m);
+            }
+            return new CallGraph(strings.toArray(String[]::new), toInts(keys), toInts(symbols), flatKinds,
+                    toInts(files), flatRanges, callerStart, toInts(allCallers), typeNames, subtypeStart,
+                    toInts(subtypes));
+        }
+
+        private static int[] toInts(List<Integer> list) {
+            var ints = new int[list.size()];
+            for (var i = 0; i < ints.length; i++) {
+                ints[i] = list.get(i);
+            }
+            return ints;
+        }
+    }
+
+    /** The members of one class that run its initializer blocks, and what the blocks refer to */
+    private static class Initializers {
+        final List<Integer> constructors = new ArrayList<>(), staticMembers = new ArrayList<>();
+        final Set<Integer> instanceCalls = new HashSet<>(), staticCalls = new HashSet<>();
+
+        void record(Builder graph) {
+            for (var m : instanceCalls) {
+                graph.callers.get(m).addAll(constructors);
+            }
+            for (var m : staticCalls) {
+                graph.callers.get(m).addAll(constructors);
+                graph.callers.get(m).addAll(staticMembers);
+            }
+        }
+    }
+
+    /** Declares the members of one compilation unit and records the member every reference is made from */
+    private static class IndexCalls extends TreePathScanner<Void, Void> {
+        private final Trees trees;
+        private final Types types;
+        private final SourcePositions positions;
+        private final CompilationUnitTree root;
+        private final String file;
+        private final Builder graph;
+        /** The member the scanner is inside, -1 when it is outside of methods and fields */
+        private int owner = -1;
+        /** The class the scanner is inside, null outside of every class */
+        private Initializers initializers;
+        /** What the initializer block the scanner is inside refers to, null outside of initializer blocks */
+        private Set<Integer> initializer;
+
+        IndexCalls(JavacTask task, CompilationUnitTree root, Builder graph) {
+            this.trees = Trees.instance(task);
+            this.types = task.getTypes();
+            this.positions = trees.getSourcePositions();
+            this.root = root;
+            this.file = Paths.get(root.getSourceFile().toUri()).toAbsolutePath().normalize().toString();
+            this.graph = graph;
+        }
+
+        @Override
+        public Void visitClass(ClassTree t, Void __) {
+            var type = trees.getElement(getCurrentPath());
+            if (type instanceof TypeElement && ((TypeElement) type).getQualifiedName().length() > 0) {
+                graph.types.add(((TypeElement) type).getQualifiedName().toString());
+            }
+            var outerInitializers = initializers;
+            var outerInitializer = initializer;
+            initializers = new Initializers();
+            initializer = null;
+            try {
+                return super.visitClass(t, __);
+            } finally {
+                initializers.record(graph);
+                initializers = outerInitializers;
+                initializer = outerInitializer;
+            }
+        }
+
+        /**
+         * Initializer blocks aren't members, what they refer to is used by the members that run them: every
+         * constructor runs the instance initializers, and any constructor or static member initializes the class
+         */
+        @Override
+        public Void visitBlock(BlockTree t, Void __) {
+            if (owner != -1 || !(getCurrentPath().getParentPath().getLeaf() instanceof ClassTree)) {
+                return super.visitBlock(t, __);
+            }
+            var outer = initializer;
+            initializer = t.isStatic() ? initializers.staticCalls : initializers.instanceCalls;
+            try {
+                return super.visitBlock(t, __);
+            } finally {
+                initializer = outer;
+            }
+        }
+
+        @Override
+        public Void visitMethod(MethodTree t, Void __) {
+            return inside(declare(t), () -> super.visitMethod(t, __));
+        }
+
+        @Override
+        public Void visitVariable(VariableTree t, Void __) {
+            if (getCurrentPath().getParentPath().getLeaf() instanceof ClassTree) {
+                return inside(declare(t), () -> super.visitVariable(t, __));
+            }
+            return super.visitVariable(t, __);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree t, Void __) {
+            check();
+            return super.visitIdentifier(t, __);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree t, Void __) {
+            check();
+            return super.visitMemberSelect(t, __);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree t, Void __) {
+            check();
+            return super.visitNewClass(t, __);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree t, Void __) {
+            check();
+            return super.visitMemberReference(t, __);
+        }
+
+        private Void inside(int member, java.util.function.Supplier<Void> scan) {
+            if (member == -1) {
+                return scan.get();
+            }
+            var outer = owner;
+            owner = member;
+            try {
+                return scan.get();
+            } finally {
+                owner = outer;
+            }
+        }
+
+        private int declare(Tree t) {
+            var element = trees.getElement(getCurrentPath());
+            if (element == null || !NavigationHelper.isMember(element)) return -1;
+            var m = graph.member(symbol(element), ReferenceIndex.symbol(element));
+            var kind = switch (element.getKind()) {
+                case METHOD -> METHOD;
+                case CONSTRUCTOR -> CONSTRUCTOR;
+                default -> FIELD;
+            };
+            var start = positions.getStartPosition(root, t);
+            var end = positions.getEndPosition(root, t);
+            // Default constructors are made up by javac, they have no source to find them at
+            var range =
+                    start < 0 || end < 0 ? new int[4] : new int[] {line(start), column(start), line(end), column(end)};
+            graph.declare(m, kind, file, range);
+            var modifiers = element.getModifiers();
+            if (kind == CONSTRUCTOR) {
+                initializers.constructors.add(m);
+            } else if (modifiers.contains(Modifier.STATIC)) {
+                initializers.staticMembers.add(m);
+            }
+            if (NavigationHelper.isDefaultConstructor(element) && !modifiers.contains(Modifier.PRIVATE)) {
+                graph.noArgConstructors.add(m);
+            }
+            if (kind == METHOD && modifiers.contains(Modifier.PUBLIC)) {
+                var className = ((TypeElement) element.getEnclosingElement()).getQualifiedName().toString();
+                graph.publicMethods.computeIfAbsent(className, k -> new HashSet<>()).add(m);
+            }
+            return m;
+        }
+
+        private void check() {
+            if (owner == -1 && initializer == null) return;
+            var candidate = trees.getElement(getCurrentPath());
+            if (candidate == null || !NavigationHelper.isMember(candidate)) return;
+            if (!(candidate.getEnclosingElement() instanceof TypeElement) || !IndexReferences.isSource(candidate)) {
+                return;
+            }
+            var m = graph.member(symbol(candidate), ReferenceIndex.symbol(candidate));
+            if (owner != -1) {
+                graph.callers.get(m).add(owner);
+            } else {
+                initializer.add(m);
+            }
+        }
+
+        /** Members of anonymous and local classes have no class name, so where they are declared tells them apart */
+        private String symbol(Element member) {
+            var symbol = ReferenceIndex.symbol(member) + ReferenceIndex.signature(types, member);
+            if (!symbol.startsWith("::")) {
+                return symbol;
+            }
+            var path = trees.getPath(member);
+            var at = path == null ? -1 : positions.getStartPosition(path.getCompilationUnit(), path.getLeaf());
+            var in = path == null ? "" : path.getCompilationUnit().getSourceFile().toUri().toString();
+            return symbol + "@" + in + ":" + at;
+        }
+
+        private int line(long position) {
+            return (int) root.getLineMap().getLineNumber(position);
+        }
+
+        /** Counted in characters like {@link com.sun.source.tree.LineMap#getPosition}, so tabs are one column */
+        private int column(long position) {
+            var lines = root.getLineMap();
+            return (int) (position - lines.getStartPosition(lines.getLineNumber(position))) + 1;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.javacs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Class and doc paths inferred from the build files of a workspace, kept in `.java-find-reference/classpath.json` under
+ * the workspace. An entry is used as long as the fingerprint of the build files it was inferred from is the same and
+ * every jar it lists still exists, so warm runs never start Maven. Entries are also kept in memory, so every compiler
+ * the process creates shares them.
+ */
+class ClassPathCache {
+    private static final int VERSION = 1;
+    static final String DIR_NAME = ".java-find-reference";
+    private static final String FILE_NAME = "classpath.json";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Logger LOG = Logger.getLogger("main");
+
+    private static class Entry {
+        String fingerprint;
+        List<String> paths = new ArrayList<>();
+    }
+
+    private static class Stored {
+        int version;
+        Map<String, Entry> entries;
+    }
+
+    /** Paths that were inferred, and whether all of them were found */
+    static class Inferred {
+        final Set<Path> paths;
+        /** False when some dependencies couldn't be resolved, the next run may find them */
+        final boolean complete;
+
+        Inferred(Set<Path> paths, boolean complete) {
+            this.paths = paths;
+            this.complete = complete;
+        }
+    }
+
+    /** Entries this process read or inferred, keyed by the cache file and the kind of path */
+    private static final Map<String, Entry> loaded = new HashMap<>();
+
+    /**
+     * The paths of `kind`, like `dependency:list`, for the build files of `workspaceRoot` with `fingerprint`. When
+     * there are none cached, `infer` finds them. An incomplete or empty result is not cached, it is what a failed build
+     * looks like.
+     */
+    static synchronized Set<Path> get(Path workspaceRoot, String kind, String fingerprint, Supplier<Inferred> infer) {
+        var file = workspaceRoot.resolve(DIR_NAME).resolve(FILE_NAME).toAbsolutePath().normalize();
+        var key = file + "#" + kind;
+        var entry = loaded.get(key);
+        if (!isValid(entry, fingerprint)) {
+            entry = read(file).get(kind);
+            if (isValid(entry, fingerprint)) {
+                LOG.info(String.format("Use %s of %d jars cached in %s", kind, entry.paths.size(), file));
+                loaded.put(key, entry);
+            }
+        }
+        if (isValid(entry, fingerprint)) {
+            var paths = new HashSet<Path>();
+            for (var p : entry.paths) {
+                paths.add(Paths.get(p));
+            }
+            return paths;
+        }
+        var inferred = infer.get();
+        var paths = inferred.paths;
+        if (!inferred.complete) {
+            LOG.info(String.format("Don't cache %s of %d jars, some dependencies are missing", kind, paths.size()));
+            return paths;
+        }
+        if (paths.isEmpty()) {
+            return paths;
+        }
+        entry = new Entry();
+        entry.fingerprint = fingerprint;
+        for (var p : paths) {
+            entry.paths.add(p.toString());
+        }
+        entry.paths.sort(null);
+        loaded.put(key, entry);
+        write(file, kind, entry);
+        return paths;
+    }
+
+    /** Forget what this process read, the next lookup reads the cache files again */
+    static synchronized void clear() {
+        loaded.clear();
+    }
+
+    private static boolean isValid(Entry entry, String fingerprint) {
+        if (entry == null || !fingerprint.equals(entry.fingerprint)) {
+            return false;
+        }
+        // The local repository was cleaned, or the jars were never downloaded on this machine
+        for (var p : entry.paths) {
+            if (!Files.exists(Paths.get(p))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Entry> read(Path file) {
+        if (!Files.exists(file)) {
+            return new HashMap<>();
+        }
+        try (var reader = Files.newBufferedReader(file)) {
+            var stored = GSON.fromJson(reader, Stored.class);
+            if (stored == null || stored.version != VERSION || stored.entries == null) {
+                LOG.info("Ignore outdated class path cache " + file);
+                return new HashMap<>();
+            }
+            return stored.entries;
+        } catch (IOException | JsonParseException e) {
+            LOG.warning("Failed to read class path cache " + file + ": " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private static void write(Path file, String kind, Entry entry) {
+        var stored = new Stored();
+        stored.version = VERSION;
+        stored.entries = read(file);
+        stored.entries.put(kind, entry);
+        try {
+            Files.createDirectories(file.getParent());
+            var tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (var writer = Files.newBufferedWriter(tmp)) {
+                GSON.toJson(stored, writer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The workspace may be read-only, then Maven runs again next time
+            LOG.warning("Failed to write class path cache " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package org.javacs;
 
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
 import com.sun.source.util.Trees;
+import com.sun.tools.javac.api.JavacTaskImpl;
 
+import javax.lang.model.element.Element;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
@@ -19,6 +23,7 @@ class CompileBatch implements AutoCloseable {
     static final int MAX_COMPLETION_ITEMS = 50;
 
     final JavaCompilerService parent;
+    final List<Diagnostic<? extends JavaFileObject>> diags;
     final ReusableCompiler.Borrow borrow;
     /** Indicates the task that requested the compilation is finished with it. */
     boolean closed;
@@ -28,25 +33,91 @@ class CompileBatch implements AutoCloseable {
     final Elements elements;
     final Types types;
     final List<CompilationUnitTree> roots;
+    /** Whether every class in the batch is attributed, otherwise only the ones that were asked for are */
+    private boolean attributedAll;
 
-    CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+    /**
+     * Compile `files`. If `word` is set, only the top-level classes that mention it are attributed, the rest are
+     * only parsed and entered until {@link #attribute} asks for them.
+     */
+    CompileBatch(
+            JavaCompilerService parent,
+            SourceFileManager fileManager,
+            List<Diagnostic<? extends JavaFileObject>> diags,
+            Collection<? extends JavaFileObject> files,
+            String word) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.diags = diags;
+        this.borrow = batchTask(parent, fileManager, diags, files);
         this.task = borrow.task;
-        this.trees = Trees.instance(borrow.task);
-        this.elements = borrow.task.getElements();
-        this.types = borrow.task.getTypes();
         this.roots = new ArrayList<>();
-        // Compile all roots
+        var compiled = false;
         try {
+            this.trees = Trees.instance(borrow.task);
+            this.elements = borrow.task.getElements();
+            this.types = borrow.task.getTypes();
+            // Compile all roots
             for (var t : borrow.task.parse()) {
                 roots.add(t);
             }
-            // The results of borrow.task.analyze() are unreliable when errors are present
-            // You can get at `Element` values using `Trees`
-            borrow.task.analyze();
+            ((JavacTaskImpl) borrow.task).enter();
+            attribute(word);
+            compiled = true;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            // Nobody gets hold of a batch that failed, so its context has to be given up here
+            if (!compiled) {
+                borrow.failed = true;
+                borrow.close();
+            }
+        }
+    }
+
+    /** Attribute the top-level classes that mention `word` and weren't attributed yet, or all of them if it is null */
+    void attribute(String word) {
+        if (attributedAll) return;
+        if (word == null) {
+            // The results of borrow.task.analyze() are unreliable when errors are present
+            // You can get at `Element` values using `Trees`
+            try {
+                borrow.task.analyze();
+            } catch (IOException e) {
+                borrow.failed = true;
+                throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                borrow.failed = true;
+                throw e;
+            }
+            attributedAll = true;
+            return;
+        }
+        var classes = new ArrayList<Element>();
+        for (var root : roots) {
+            CharSequence contents;
+            try {
+                contents = root.getSourceFile().getCharContent(true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            var pos = trees.getSourcePositions();
+            for (var type : root.getTypeDecls()) {
+                if (!(type instanceof ClassTree)) continue;
+                var start = (int) pos.getStartPosition(root, type);
+                var end = (int) pos.getEndPosition(root, type);
+                if (start < 0 || end > contents.length() || !WordIndex.mentions(contents, start, end, word)) continue;
+                var element = trees.getElement(new TreePath(new TreePath(root), type));
+                if (element != null) {
+                    classes.add(element);
+                }
+            }
+        }
+        // Classes that were attributed before are no longer queued, so asking again does nothing
+        try {
+            ((JavacTaskImpl) borrow.task).analyze(classes);
+        } catch (RuntimeException e) {
+            borrow.failed = true;
+            throw e;
         }
     }
 
@@ -57,7 +128,7 @@ class CompileBatch implements AutoCloseable {
     Set<Path> needsAdditionalSources() {
         // Check for "class not found errors" that refer to package private classes
         var addFiles = new HashSet<Path>();
-        for (var err : parent.diags) {
+        for (var err : diags) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) continue;
             if (!isValidFileRange(err)) continue;
             var className = errorText(err);
@@ -103,10 +174,15 @@ class CompileBatch implements AutoCloseable {
     }
 
     private static ReusableCompiler.Borrow batchTask(
-            JavaCompilerService parent, Collection<? extends JavaFileObject> sources) {
-        parent.diags.clear();
+            JavaCompilerService parent,
+            SourceFileManager fileManager,
+            List<Diagnostic<? extends JavaFileObject>> diags,
+            Collection<? extends JavaFileObject> sources) {
+        diags.clear();
         var options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.fileManager, parent.diags::add, options, List.of(), sources);
+        var borrow = parent.compiler.getTask(fileManager, diags::add, options, List.of(), sources);
+        borrow.task.addTaskListener(new EraseMethodBodies(borrow.task, sources));
+        return borrow;
     }
 
     /** Combine source path or class path entries using the system separator, for example ':' in unix */
@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -23,8 +24,13 @@ public interface CompilerProvider {
 
     Path[] findTypeReferences(String className);
 
+    Map<String, Path[]> findTypeReferences(Collection<String> classNames);
+
     Path[] findMemberReferences(String className, String memberName);
 
+    /** Files that mention `memberName`, whichever class declares it */
+    Path[] findMemberReferences(String memberName);
+
     ParseTask parse(Path file);
 
     ParseTask parse(JavaFileObject file);
@@ -33,5 +39,11 @@ public interface CompilerProvider {
 
     CompileTask compile(Collection<? extends JavaFileObject> sources);
 
+    /**
+     * Compile `files`, but only attribute the top-level classes that mention `word`. Elements of the other classes are
+     * there, but their trees don't resolve to anything, so this is for searches that only look at trees naming `word`.
+     */
+    CompileTask compileMentioning(String word, Path... files);
+
     Path NOT_FOUND = Paths.get("");
 }
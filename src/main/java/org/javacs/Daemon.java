@@ -0,0 +1,166 @@
+package org.javacs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a warm {@link JavaFindReference} in memory and answers find-leaf requests on a localhost port. Every
+ * connection carries one JSON request line and gets one JSON response line back.
+ */
+class Daemon implements AutoCloseable {
+    static final String FIND = "find";
+    static final String SHUTDOWN = "shutdown";
+
+    static class Request {
+        String command = FIND;
+        /** Output of `git diff`, used when there are no positions */
+        String diff = "";
+        /** Positions with format 'full file path:line number:column number' */
+        List<String> positions = new ArrayList<>();
+        List<String> specialMethods = new ArrayList<>();
+        int depth = -1;
+    }
+
+    static class Response {
+        List<String> methods = new ArrayList<>();
+        String error;
+    }
+
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Logger LOG = Logger.getLogger("main");
+
+    private final JavaFindReference finder;
+    private final ServerSocket server;
+    /** How long a client may take to send its request line, so a silent one can't hold up everyone after it */
+    int readTimeoutMillis = 10000;
+
+    Daemon(JavaFindReference finder, int port) {
+        this.finder = finder;
+        try {
+            this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    /** Answer requests one at a time until a shutdown request arrives */
+    void serve() {
+        LOG.info("Daemon listening on port " + port());
+        while (true) {
+            try (var socket = server.accept()) {
+                socket.setSoTimeout(readTimeoutMillis);
+                if (!handle(socket)) {
+                    LOG.info("Daemon shut down");
+                    return;
+                }
+            } catch (SocketTimeoutException e) {
+                LOG.warning("Dropped a client that sent no request in " + readTimeoutMillis + " ms");
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                LOG.warning("Failed to answer request: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean handle(Socket socket) throws IOException {
+        var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        var out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        var response = new Response();
+        var running = true;
+        try {
+            var request = GSON.fromJson(in.readLine(), Request.class);
+            if (request == null) {
+                throw new IllegalArgumentException("Empty request");
+            }
+            if (request.command.equals(SHUTDOWN)) {
+                running = false;
+            } else if (request.command.equals(FIND)) {
+                var startTime = System.nanoTime();
+                response.methods.addAll(find(request));
+                LOG.info(String.format("Answered request in %d ms", (System.nanoTime() - startTime) / 1000000));
+                Cache.logStatistics();
+            } else {
+                throw new IllegalArgumentException("Unknown command " + request.command);
+            }
+        } catch (RuntimeException e) {
+            LOG.warning("Request failed: " + e);
+            response.error = String.valueOf(e.getMessage());
+        }
+        out.write(GSON.toJson(response));
+        out.newLine();
+        out.flush();
+        return running;
+    }
+
+    private Set<String> find(Request request) {
+        try {
+            // Any file may have been edited since the last request, not only the ones it names
+            finder.refreshChangedFiles();
+            if (request.positions.isEmpty()) {
+                return finder.findLeafReferences(request.diff, request.specialMethods, request.depth);
+            }
+            var positions = new ArrayList<FilePosition>();
+            for (var position : request.positions) {
+                var tokens = position.split(":");
+                if (tokens.length != 3) {
+                    throw new IllegalArgumentException("Invalid file position format " + position);
+                }
+                var file = new File(tokens[0]).toPath().toAbsolutePath().normalize();
+                positions.add(new FilePosition(file, Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2])));
+            }
+            return finder.findLeafReferences(positions, request.specialMethods, request.depth);
+        } finally {
+            finder.saveIndex();
+        }
+    }
+
+    /** Send `request` to the daemon listening on `port` and wait for its answer */
+    static Response send(int port, Request request) {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.write(GSON.toJson(request));
+            out.newLine();
+            out.flush();
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            var response = GSON.fromJson(in.readLine(), Response.class);
+            if (response == null) {
+                throw new RuntimeException("Daemon closed the connection without answering");
+            }
+            return response;
+        } catch (IOException | JsonParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.javacs;
+
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.List;
+
+import javax.lang.model.type.TypeKind;
+import javax.tools.JavaFileObject;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Drops the method bodies of the files javac pulls in from the source path, right after they are parsed. A batch only
+ * needs the declarations of files that aren't among its sources, and attributing their bodies is most of what
+ * compiling them costs. The text is left alone, so every position javac reports is still right.
+ *
+ * <p>Non-void methods and constructors are left with `throw null;`, so they still can't complete normally and final
+ * fields still count as assigned. Constructors also keep their `this(...)` or `super(...)` call.
+ */
+class EraseMethodBodies extends TreeScanner<Void, Void> implements TaskListener {
+    private final TreeMaker make;
+    private final Set<URI> sources = new HashSet<>();
+
+    EraseMethodBodies(JavacTask task, Collection<? extends JavaFileObject> sources) {
+        this.make = TreeMaker.instance(((BasicJavacTask) task).getContext());
+        for (var f : sources) {
+            this.sources.add(f.toUri());
+        }
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.PARSE) return;
+        if (!sources.contains(e.getSourceFile().toUri())) {
+            scan(e.getCompilationUnit(), null);
+        }
+    }
+
+    @Override
+    public Void visitMethod(MethodTree node, Void __) {
+        // Not scanning any further, nested classes and lambdas go with the body
+        var body = ((JCTree.JCMethodDecl) node).body;
+        if (body == null || body.stats.isEmpty()) {
+            return null;
+        }
+        var kept = List.<JCTree.JCStatement>nil();
+        if (TreeInfo.isSelfCall(body.stats.head)) {
+            kept = kept.append(body.stats.head);
+        }
+        if (needsThrow(node)) {
+            make.at(body.pos);
+            kept = kept.append(make.Throw(make.Literal(TypeTag.BOT, null)));
+        }
+        body.stats = kept;
+        return null;
+    }
+
+    private static boolean needsThrow(MethodTree method) {
+        var type = method.getReturnType();
+        if (type == null) return true;
+        return !(type instanceof PrimitiveTypeTree
+                && ((PrimitiveTypeTree) type).getPrimitiveTypeKind() == TypeKind.VOID);
+    }
+}
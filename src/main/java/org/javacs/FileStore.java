@@ -7,6 +7,11 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
 public class FileStore {
@@ -16,8 +21,10 @@ public class FileStore {
     private static final Map<Path, VersionedContent> activeDocuments = new HashMap<>();
 
     /** javaSources[file] is the javaSources time of a .java source file. */
-    // TODO organize by package name for speed of list(...)
-    private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
+    private static final ConcurrentSkipListMap<Path, Info> javaSources = new ConcurrentSkipListMap<>();
+
+    /** filesByPackage[packageName] is every file in javaSources that declares packageName, in the same order. */
+    private static final Map<String, Set<Path>> filesByPackage = new ConcurrentHashMap<>();
 
     private static class Info {
         final Instant modified;
@@ -41,6 +48,10 @@ public class FileStore {
                 addFiles(root);
             }
         }
+        if (!workspaceRoots.equals(newRoots)) {
+            WordIndex.clear();
+            TypeHierarchy.clear();
+        }
         workspaceRoots.clear();
         workspaceRoots.addAll(newRoots);
     }
@@ -53,30 +64,81 @@ public class FileStore {
         return normalize;
     }
 
+    /** Reading package names is mostly waiting on the disk, so the scan uses more threads than there are cores */
+    private static final int SCAN_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Read files in batches of at most this many, so one huge directory is still spread over every thread */
+    private static final int FILES_PER_TASK = 64;
+
     private static void addFiles(Path root) {
+        var started = System.nanoTime();
+        var before = javaSources.size();
+        var pool = new ForkJoinPool(SCAN_THREADS);
         try {
-            Files.walkFileTree(root, new FindJavaSources());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            pool.invoke(new ScanDirectory(root));
+        } finally {
+            pool.shutdown();
         }
+        LOG.info(String.format("Found %d java sources in %s in %d ms", javaSources.size() - before, root,
+                (System.nanoTime() - started) / 1000000));
     }
 
-    static class FindJavaSources extends SimpleFileVisitor<Path> {
+    /**
+     * Lists one directory, forks a task for every subdirectory and reads the package names of the java files in it.
+     * Like {@link Files#walkFileTree(Path, FileVisitor)}, symbolic links to directories are not followed.
+     */
+    private static class ScanDirectory extends RecursiveAction {
+        private final Path dir;
+
+        ScanDirectory(Path dir) {
+            this.dir = dir;
+        }
+
         @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-            if (attrs.isSymbolicLink()) {
-                LOG.warning("Don't check " + dir + " for java sources");
-                return FileVisitResult.SKIP_SUBTREE;
+        protected void compute() {
+            var tasks = new ArrayList<RecursiveAction>();
+            var sources = new ArrayList<Path>();
+            try {
+                if (!Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                    if (isJavaFile(dir)) {
+                        readInfoFromDisk(dir);
+                    }
+                    return;
+                }
+                try (var entries = Files.newDirectoryStream(dir)) {
+                    for (var entry : entries) {
+                        var attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attrs.isDirectory()) {
+                            tasks.add(new ScanDirectory(entry));
+                        } else if (attrs.isSymbolicLink() && Files.isDirectory(entry)) {
+                            LOG.warning("Don't check " + entry + " for java sources");
+                        } else if (isJavaFile(entry)) {
+                            sources.add(entry);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (var i = 0; i < sources.size(); i += FILES_PER_TASK) {
+                tasks.add(new ReadSources(sources.subList(i, Math.min(sources.size(), i + FILES_PER_TASK))));
             }
-            return FileVisitResult.CONTINUE;
+            invokeAll(tasks);
+        }
+    }
+
+    private static class ReadSources extends RecursiveAction {
+        private final List<Path> files;
+
+        ReadSources(List<Path> files) {
+            this.files = files;
         }
 
         @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes _attrs) {
-            if (isJavaFile(file)) {
+        protected void compute() {
+            for (var file : files) {
                 readInfoFromDisk(file);
             }
-            return FileVisitResult.CONTINUE;
         }
     }
 
@@ -85,13 +147,39 @@ public class FileStore {
     }
 
     static List<Path> list(String packageName) {
-        var list = new ArrayList<Path>();
-        for (var file : javaSources.keySet()) {
-            if (javaSources.get(file).packageName.equals(packageName)) {
-                list.add(file);
+        var files = filesByPackage.get(packageName);
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static void putSource(Path file, Info info) {
+        var before = javaSources.put(file, info);
+        if (before != null && !before.packageName.equals(info.packageName)) {
+            removeFromPackage(file, before.packageName);
+        }
+        filesByPackage.compute(info.packageName, (k, files) -> {
+            if (files == null) {
+                files = new ConcurrentSkipListSet<>();
             }
+            files.add(file);
+            return files;
+        });
+    }
+
+    private static void removeSource(Path file) {
+        var before = javaSources.remove(file);
+        if (before != null) {
+            removeFromPackage(file, before.packageName);
         }
-        return list;
+    }
+
+    private static void removeFromPackage(Path file, String packageName) {
+        filesByPackage.computeIfPresent(packageName, (k, files) -> {
+            files.remove(file);
+            return files.isEmpty() ? null : files;
+        });
     }
 
     public static Set<Path> sourceRoots() {
@@ -175,26 +263,82 @@ public class FileStore {
         return list;
     }
 
+    /**
+     * Bring the workspace up to date with the disk. Files that are new or whose modified time changed are read again,
+     * files that are gone are forgotten, and open documents are left alone. Returns every file that changed.
+     */
+    static Set<Path> refresh() {
+        var onDisk = new HashMap<Path, Instant>();
+        for (var root : workspaceRoots) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && isJavaFile(file)) {
+                            onDisk.put(file, attrs.lastModifiedTime().toInstant());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        var changed = new HashSet<Path>();
+        for (var file : javaSources.keySet()) {
+            // Files outside of the workspace were added one by one, and are only forgotten the same way
+            var inWorkspace = workspaceRoots.stream().anyMatch(file::startsWith);
+            if (inWorkspace && !onDisk.containsKey(file) && !activeDocuments.containsKey(file)) {
+                externalDelete(file);
+                changed.add(file);
+            }
+        }
+        for (var e : onDisk.entrySet()) {
+            var file = e.getKey();
+            var known = javaSources.get(file);
+            if (activeDocuments.containsKey(file) || known != null && known.modified.equals(e.getValue())) continue;
+            externalChange(file);
+            changed.add(file);
+        }
+        if (!changed.isEmpty()) {
+            LOG.info(String.format("%d files changed on disk", changed.size()));
+        }
+        return changed;
+    }
+
     static void externalCreate(Path file) {
         readInfoFromDisk(file);
     }
 
     static void externalChange(Path file) {
+        Cache.invalidateAll(file);
         readInfoFromDisk(file);
     }
 
     static void externalDelete(Path file) {
-        javaSources.remove(file);
+        Cache.invalidateAll(file);
+        removeSource(file);
+        WordIndex.removed(file);
+        TypeHierarchy.removed(file);
     }
 
     private static void readInfoFromDisk(Path file) {
         try {
             var time = Files.getLastModifiedTime(file).toInstant();
             var packageName = StringSearch.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            putSource(file, new Info(time, packageName));
+            WordIndex.changed(file);
+            TypeHierarchy.changed(file);
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
-            javaSources.remove(file);
+            removeSource(file);
+            WordIndex.removed(file);
+            TypeHierarchy.removed(file);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -10,20 +10,34 @@ import com.sun.source.util.TreePathScanner;
 import com.sun.source.util.Trees;
 
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 class FindReferences extends TreePathScanner<Void, List<TreePath>> {
     final JavacTask task;
     final Element find;
+    /**
+     * Every name a reference to `find` can have. Trees with other names are skipped without resolving them, which
+     * would attribute classes the batch left alone on purpose.
+     */
+    private final Set<String> names = new HashSet<>();
 
     FindReferences(JavacTask task, Element find) {
         this.task = task;
         this.find = find;
+        names.add(find.getSimpleName().toString());
+        if (find.getKind() == ElementKind.CONSTRUCTOR) {
+            names.add(find.getEnclosingElement().getSimpleName().toString());
+            names.add("this");
+            names.add("super");
+        }
     }
 
     @Override
     public Void visitIdentifier(IdentifierTree t, List<TreePath> list) {
-        if (check()) {
+        if (names.contains(t.getName().toString()) && check()) {
             list.add(getCurrentPath());
         }
         return super.visitIdentifier(t, list);
@@ -31,7 +45,7 @@ class FindReferences extends TreePathScanner<Void, List<TreePath>> {
 
     @Override
     public Void visitMemberSelect(MemberSelectTree t, List<TreePath> list) {
-        if (check()) {
+        if (names.contains(t.getIdentifier().toString()) && check()) {
             list.add(getCurrentPath());
         }
         return super.visitMemberSelect(t, list);
@@ -39,7 +53,7 @@ class FindReferences extends TreePathScanner<Void, List<TreePath>> {
 
     @Override
     public Void visitNewClass(NewClassTree t, List<TreePath> list) {
-        if (check()) {
+        if (find.getKind() == ElementKind.CONSTRUCTOR && check()) {
             list.add(getCurrentPath());
         }
         return super.visitNewClass(t, list);
@@ -47,7 +61,7 @@ class FindReferences extends TreePathScanner<Void, List<TreePath>> {
 
     @Override
     public Void visitMemberReference(MemberReferenceTree t, List<TreePath> list) {
-        if (check()) {
+        if (names.contains(t.getName().toString()) && check()) {
             list.add(getCurrentPath());
         }
         return super.visitMemberReference(t, list);
@@ -14,8 +14,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GitDiffParser {
+    private static final String DEV_NULL = "/dev/null";
+
     private Path diffFile;
     private Path workspaceRoot;
+    /** The commit the diff starts from, null when the diff was given as text */
+    private String baseCommit;
 
     public GitDiffParser(Path workspaceRoot, Path diffFile) {
         this.diffFile = diffFile;
@@ -25,6 +29,7 @@ public class GitDiffParser {
     public GitDiffParser(Path workspaceRoot) {
         this.workspaceRoot = workspaceRoot;
         this.diffFile = getGitDiff();
+        this.baseCommit = revParse(workspaceRoot, "HEAD^");
     }
 
     public GitDiffParser(Path workspaceRoot, String diffStr) {
@@ -109,6 +114,84 @@ public class GitDiffParser {
         return modifiedLines;
     }
 
+    /** The commit the diff starts from, or null if it isn't known */
+    public String baseCommit() {
+        return baseCommit;
+    }
+
+    /** The commit `revision` names in the repository of `workspaceRoot`, or null if there is none */
+    static String revParse(Path workspaceRoot, String revision) {
+        try {
+            var process = new ProcessBuilder().command("git", "rev-parse", "--verify", "--quiet", revision)
+                    .directory(workspaceRoot.toFile()).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            var output = new String(process.getInputStream().readAllBytes()).trim();
+            if (process.waitFor() != 0 || output.isEmpty()) {
+                return null;
+            }
+            return output;
+        } catch (InterruptedException | IOException e) {
+            return null;
+        }
+    }
+
+    /** The raw diff text */
+    public String diff() {
+        try {
+            return Files.readString(diffFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Java files the diff adds or modifies, as they are after the change */
+    public List<Path> touchedFiles() {
+        return files(false);
+    }
+
+    /** Java files the diff removes, including the old side of renames */
+    public List<Path> deletedFiles() {
+        return files(true);
+    }
+
+    private List<Path> files(boolean deleted) {
+        var files = new ArrayList<Path>();
+        try (BufferedReader br = Files.newBufferedReader(diffFile)) {
+            String strLine;
+            String fromFile = null;
+            while ((strLine = br.readLine()) != null) {
+                // File headers are a `---` line directly followed by a `+++` line
+                if (strLine.startsWith("--- ")) {
+                    fromFile = strLine.substring(4);
+                    continue;
+                }
+                if (fromFile == null || !strLine.startsWith("+++ ")) {
+                    fromFile = null;
+                    continue;
+                }
+                var toFile = strLine.substring(4);
+                if (deleted) {
+                    // Deleted files go to /dev/null, renamed files to another path
+                    if (!fromFile.equals(DEV_NULL) && !fromFile.substring(2).equals(toFile.substring(2))) {
+                        addJavaFile(files, fromFile.substring(2));
+                    }
+                } else if (!toFile.equals(DEV_NULL)) {
+                    addJavaFile(files, toFile.substring(2));
+                }
+                fromFile = null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return files;
+    }
+
+    private void addJavaFile(List<Path> files, String resourcePath) {
+        var file = getPath(resourcePath);
+        if (JavaFindReference.isJavaFile(file) && !files.contains(file)) {
+            files.add(file);
+        }
+    }
+
     private Path getGitDiff() {
         String[] command = {
                 "git", "diff", "--relative", "HEAD^", "HEAD"
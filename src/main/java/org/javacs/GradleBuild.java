@@ -0,0 +1,251 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The external dependencies a Gradle workspace declares, read from settings.gradle, build.gradle, gradle.properties
+ * and gradle/libs.versions.toml without running Gradle. Groovy and Kotlin build files are both read. Dependencies on
+ * other projects of the workspace are skipped, their sources are in the workspace.
+ */
+class GradleBuild {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /** Names of the files whose content decides the dependencies */
+    static final Set<String> FILES =
+            Set.of("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "gradle.properties",
+                    "libs.versions.toml");
+
+    static boolean isGradle(Path workspaceRoot) {
+        for (var name : List.of("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts")) {
+            if (Files.exists(workspaceRoot.resolve(name))) return true;
+        }
+        return false;
+    }
+
+    /** Every dependency of the root project and the projects settings.gradle includes, as `group:name[:version]` */
+    static Set<String> dependencies(Path workspaceRoot) {
+        var rootProperties = new HashMap<String, String>();
+        readProperties(workspaceRoot.resolve("gradle.properties"), rootProperties);
+        var catalog = catalog(workspaceRoot.resolve("gradle/libs.versions.toml"));
+        var rootBuild = withoutComments(read(buildFile(workspaceRoot)));
+        readVariables(rootBuild, rootProperties);
+        var found = new LinkedHashSet<String>();
+        readDependencies(rootBuild, rootProperties, catalog, found);
+        for (var project : includedProjects(workspaceRoot)) {
+            var properties = new HashMap<>(rootProperties);
+            readProperties(project.resolve("gradle.properties"), properties);
+            var build = withoutComments(read(buildFile(project)));
+            readVariables(build, properties);
+            readDependencies(build, properties, catalog, found);
+        }
+        return found;
+    }
+
+    private static final Pattern PROJECT_NOTATION =
+            Pattern.compile("\\Gproject\\s*\\(\\s*(?:path\\s*[:=]\\s*)?['\"]([^'\"]+)['\"]");
+
+    /** The directory of the root project and of every included project, with the directories of the projects it uses */
+    static Map<Path, Set<Path>> projectDependencies(Path workspaceRoot) {
+        var result = new LinkedHashMap<Path, Set<Path>>();
+        var projects = new ArrayList<Path>();
+        projects.add(workspaceRoot);
+        projects.addAll(includedProjects(workspaceRoot));
+        for (var project : projects) {
+            var build = withoutComments(read(buildFile(project)));
+            var dependsOn = new LinkedHashSet<Path>();
+            var configurations = CONFIGURATION.matcher(build);
+            while (configurations.find()) {
+                var m = PROJECT_NOTATION.matcher(build);
+                if (m.find(configurations.end())) {
+                    dependsOn.add(projectDirectory(workspaceRoot, m.group(1)));
+                }
+            }
+            result.put(project, dependsOn);
+        }
+        return result;
+    }
+
+    /** `:b:c` is in b/c unless settings.gradle moves it */
+    private static Path projectDirectory(Path workspaceRoot, String path) {
+        return workspaceRoot.resolve(path.replaceFirst("^:", "").replace(':', '/'));
+    }
+
+    private static Path buildFile(Path project) {
+        var groovy = project.resolve("build.gradle");
+        return Files.exists(groovy) ? groovy : project.resolve("build.gradle.kts");
+    }
+
+    private static final Pattern INCLUDE = Pattern.compile("\\binclude\\b\\s*\\(?([^\\n)]*)");
+    private static final Pattern QUOTED = Pattern.compile("['\"]([^'\"]+)['\"]");
+
+    /** Directories of the projects `include 'a', ':b:c'` adds, which are a and b/c by default */
+    private static List<Path> includedProjects(Path workspaceRoot) {
+        var settings = workspaceRoot.resolve("settings.gradle");
+        if (!Files.exists(settings)) settings = workspaceRoot.resolve("settings.gradle.kts");
+        var result = new ArrayList<Path>();
+        var includes = INCLUDE.matcher(read(settings));
+        while (includes.find()) {
+            var names = QUOTED.matcher(includes.group(1));
+            while (names.find()) {
+                result.add(projectDirectory(workspaceRoot, names.group(1)));
+            }
+        }
+        return result;
+    }
+
+    private static final Pattern CONFIGURATION =
+            Pattern.compile(
+                    "\\b(?:implementation|api|compile|compileOnly|compileOnlyApi|runtime|runtimeOnly"
+                            + "|annotationProcessor"
+                            + "|[a-z]\\w*(?:Implementation|Api|Compile|CompileOnly|Runtime|RuntimeOnly"
+                            + "|AnnotationProcessor))"
+                            + "\\b\\s*\\(?\\s*");
+    private static final Pattern STRING_NOTATION = Pattern.compile("\\G['\"]([^'\"]+)['\"]");
+    private static final Pattern MAP_NOTATION =
+            Pattern.compile(
+                    "\\Ggroup\\s*[:=]\\s*['\"]([^'\"]+)['\"]\\s*,\\s*name\\s*[:=]\\s*['\"]([^'\"]+)['\"]"
+                            + "(?:\\s*,\\s*version\\s*[:=]\\s*['\"]([^'\"]+)['\"])?");
+    private static final Pattern CATALOG_NOTATION = Pattern.compile("\\Glibs\\.([\\w.]+)");
+
+    private static void readDependencies(
+            String build, Map<String, String> properties, Map<String, String> catalog, Set<String> found) {
+        var configurations = CONFIGURATION.matcher(build);
+        while (configurations.find()) {
+            var from = configurations.end();
+            String coordinates = null;
+            Matcher m;
+            if ((m = STRING_NOTATION.matcher(build)).find(from)) {
+                coordinates = m.group(1);
+            } else if ((m = MAP_NOTATION.matcher(build)).find(from)) {
+                coordinates = m.group(1) + ":" + m.group(2) + (m.group(3) == null ? "" : ":" + m.group(3));
+            } else if ((m = CATALOG_NOTATION.matcher(build)).find(from)) {
+                coordinates = catalog.get(m.group(1));
+            }
+            if (coordinates == null) continue;
+            // `group:name:version@ext` picks the artifact without its dependencies, which needs the same jar
+            coordinates = interpolate(coordinates.replaceFirst("@.*$", ""), properties);
+            if (coordinates.contains("$") || coordinates.split(":").length < 2) {
+                LOG.warning("Couldn't understand dependency " + coordinates);
+                continue;
+            }
+            found.add(coordinates);
+        }
+    }
+
+    private static final Pattern VARIABLE =
+            Pattern.compile("\\b(?:set\\(\\s*['\"])?([\\w.]+)['\"]?\\s*[=,]\\s*['\"]([^'\"$]*)['\"]");
+
+    /** Remember `ext.name = 'value'`, `def name = 'value'`, `val name = "value"` and the like */
+    private static void readVariables(String build, Map<String, String> properties) {
+        var m = VARIABLE.matcher(build);
+        while (m.find()) {
+            var name = m.group(1);
+            properties.put(name.substring(name.lastIndexOf('.') + 1), m.group(2));
+        }
+    }
+
+    private static final Pattern REFERENCE = Pattern.compile("\\$\\{([^}]+)}|\\$(\\w+(?:\\.\\w+)*)");
+
+    private static String interpolate(String value, Map<String, String> properties) {
+        var m = REFERENCE.matcher(value);
+        var result = new StringBuilder();
+        while (m.find()) {
+            var name = m.group(1) != null ? m.group(1).trim() : m.group(2);
+            var replacement = properties.get(name.substring(name.lastIndexOf('.') + 1));
+            m.appendReplacement(result, Matcher.quoteReplacement(replacement == null ? m.group() : replacement));
+        }
+        m.appendTail(result);
+        return result.toString();
+    }
+
+    private static void readProperties(Path file, Map<String, String> properties) {
+        for (var line : read(file).split("\n")) {
+            var i = line.indexOf('=');
+            if (line.startsWith("#") || i < 0) continue;
+            properties.put(line.substring(0, i).trim(), line.substring(i + 1).trim());
+        }
+    }
+
+    private static final Pattern TOML_ENTRY = Pattern.compile("^\\s*([\\w.-]+)\\s*=\\s*(.+?)\\s*$", Pattern.MULTILINE);
+    private static final Pattern TOML_FIELD =
+            Pattern.compile(
+                    "([\\w.]+)\\s*=\\s*(?:\"([^\"]*)\""
+                            + "|\\{\\s*(?:strictly|require|prefer)\\s*=\\s*\"([^\"]*)\")");
+
+    /** Libraries of a version catalog by accessor, like `libs.guava.core` for `guava-core`, as `group:name:version` */
+    private static Map<String, String> catalog(Path toml) {
+        var versions = new HashMap<String, String>();
+        var libraries = new HashMap<String, String>();
+        String section = null;
+        for (var line : read(toml).split("\n")) {
+            var trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                section = trimmed.replaceAll("[\\[\\]\\s]", "");
+                continue;
+            }
+            var entry = TOML_ENTRY.matcher(line);
+            if (!entry.matches()) continue;
+            var name = entry.group(1);
+            var value = entry.group(2);
+            if ("versions".equals(section)) {
+                var fields = TOML_FIELD.matcher(name + " = " + value);
+                if (fields.find()) versions.put(name, fields.group(2) != null ? fields.group(2) : fields.group(3));
+            } else if ("libraries".equals(section)) {
+                libraries.put(name, value);
+            }
+        }
+        var result = new HashMap<String, String>();
+        for (var library : libraries.entrySet()) {
+            var value = library.getValue();
+            String coordinates;
+            if (value.startsWith("\"")) {
+                coordinates = value.replace("\"", "");
+            } else {
+                var fields = new HashMap<String, String>();
+                var m = TOML_FIELD.matcher(value);
+                while (m.find()) {
+                    fields.put(m.group(1), m.group(2) != null ? m.group(2) : m.group(3));
+                }
+                var module = fields.containsKey("module")
+                        ? fields.get("module")
+                        : fields.get("group") + ":" + fields.get("name");
+                var version = fields.containsKey("version.ref")
+                        ? versions.get(fields.get("version.ref"))
+                        : fields.get("version");
+                coordinates = version == null ? module : module + ":" + version;
+            }
+            result.put(library.getKey().replaceAll("[-_]", "."), coordinates);
+        }
+        return result;
+    }
+
+    private static final Pattern COMMENT =
+            Pattern.compile("/\\*.*?\\*/|^\\s*//[^\\n]*", Pattern.DOTALL | Pattern.MULTILINE);
+
+    /** Drop block comments and whole line comments, which often hold dependencies that were switched off */
+    private static String withoutComments(String build) {
+        return COMMENT.matcher(build).replaceAll("");
+    }
+
+    private static String read(Path file) {
+        if (!Files.exists(file)) return "";
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            LOG.warning("Failed to read " + file + ": " + e.getMessage());
+            return "";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.javacs;
+
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Symbol;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Collects every reference to a member declared in a source file, grouped by the referenced member */
+class IndexReferences extends TreePathScanner<Void, Map<Element, List<TreePath>>> {
+    final Trees trees;
+
+    IndexReferences(JavacTask task) {
+        this.trees = Trees.instance(task);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree t, Map<Element, List<TreePath>> map) {
+        check(map);
+        return super.visitIdentifier(t, map);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree t, Map<Element, List<TreePath>> map) {
+        check(map);
+        return super.visitMemberSelect(t, map);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree t, Map<Element, List<TreePath>> map) {
+        check(map);
+        return super.visitNewClass(t, map);
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree t, Map<Element, List<TreePath>> map) {
+        check(map);
+        return super.visitMemberReference(t, map);
+    }
+
+    private void check(Map<Element, List<TreePath>> map) {
+        var candidate = trees.getElement(getCurrentPath());
+        if (candidate == null || !NavigationHelper.isMember(candidate) || NavigationHelper.isLocal(candidate)) {
+            return;
+        }
+        if (!(candidate.getEnclosingElement() instanceof TypeElement) || !isSource(candidate)) {
+            return;
+        }
+        map.computeIfAbsent(candidate, k -> new ArrayList<>()).add(getCurrentPath());
+    }
+
+    /** Members of library classes are never searched for, so they are not worth indexing */
+    static boolean isSource(Element member) {
+        if (!(member instanceof Symbol)) return false;
+        var outermost = ((Symbol) member).outermostClass();
+        return outermost != null
+                && outermost.classfile != null
+                && outermost.classfile.getKind() == JavaFileObject.Kind.SOURCE;
+    }
+}
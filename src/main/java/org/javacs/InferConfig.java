@@ -2,10 +2,16 @@ package org.javacs;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -65,7 +71,14 @@ class InferConfig {
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
-            return mvnDependencies(pomXml, "dependency:list");
+            return ClassPathCache.get(workspaceRoot, "dependency:list", mavenFingerprint(),
+                    () -> mavenDependencies(pomXml, false));
+        }
+
+        // Gradle
+        if (GradleBuild.isGradle(workspaceRoot)) {
+            return ClassPathCache.get(workspaceRoot, "gradle:classpath", gradleFingerprint(),
+                    () -> gradleDependencies(false));
         }
 
         return Collections.emptySet();
@@ -80,6 +93,18 @@ class InferConfig {
         return workspaceRoot;
     }
 
+    /** The modules of the Maven reactor or the Gradle build, and which of them depend on which */
+    ModuleGraph moduleGraph() {
+        var pomXml = workspaceRoot.resolve("pom.xml");
+        if (Files.exists(pomXml)) {
+            return new ModuleGraph(new MavenResolver(mavenRepository()).moduleDependencies(pomXml));
+        }
+        if (GradleBuild.isGradle(workspaceRoot)) {
+            return new ModuleGraph(GradleBuild.projectDependencies(workspaceRoot));
+        }
+        return ModuleGraph.NONE;
+    }
+
     /** Find source .jar files in local maven repository. */
     Set<Path> buildDocPath() {
         // externalDependencies
@@ -100,12 +125,147 @@ class InferConfig {
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
-            return mvnDependencies(pomXml, "dependency:sources");
+            return ClassPathCache.get(workspaceRoot, "dependency:sources", mavenFingerprint(),
+                    () -> mavenDependencies(pomXml, true));
+        }
+
+        // Gradle
+        if (GradleBuild.isGradle(workspaceRoot)) {
+            return ClassPathCache.get(workspaceRoot, "gradle:sources", gradleFingerprint(),
+                    () -> gradleDependencies(true));
         }
 
         return Collections.emptySet();
     }
 
+    /**
+     * Resolve the dependencies of `pomXml` from the local repository, which takes milliseconds. Maven only runs when
+     * some jars aren't there or some profiles need it, because it can download them and decide on profiles. Missing
+     * source jars are not worth a Maven run. Whatever Maven doesn't settle is incomplete, and not cached.
+     */
+    private ClassPathCache.Inferred mavenDependencies(Path pomXml, boolean sources) {
+        var resolver = new MavenResolver(mavenRepository());
+        var found = sources ? resolver.sourcePath(pomXml) : resolver.classPath(pomXml);
+        if (resolver.missing.isEmpty()) {
+            return new ClassPathCache.Inferred(found, true);
+        }
+        if (sources) {
+            return new ClassPathCache.Inferred(found, false);
+        }
+        LOG.info("Couldn't resolve from the local repository: " + String.join(", ", resolver.missing));
+        if (getMvnCommand() == null) {
+            LOG.warning("Couldn't find mvn to download the missing dependencies");
+            return new ClassPathCache.Inferred(found, false);
+        }
+        var downloaded = mvnDependencies(pomXml, "dependency:list");
+        return downloaded.isEmpty()
+                ? new ClassPathCache.Inferred(found, false)
+                : new ClassPathCache.Inferred(downloaded, true);
+    }
+
+    /**
+     * Resolve the dependencies the Gradle build files declare from the module cache of Gradle, and from the local Maven
+     * repository for builds that use mavenLocal(). Gradle never runs, so dependencies it hasn't downloaded stay
+     * missing, and the result isn't cached until a Gradle build downloads them.
+     */
+    private ClassPathCache.Inferred gradleDependencies(boolean sources) {
+        var resolver =
+                new MavenResolver(
+                        List.of(
+                                MavenResolver.gradleCache(gradleHome.resolve("caches/modules-2/files-2.1")),
+                                MavenResolver.mavenRepository(mavenRepository())));
+        var found = resolver.resolve(GradleBuild.dependencies(workspaceRoot), sources);
+        if (!resolver.missing.isEmpty()) {
+            LOG.warning("Not in the Gradle cache, run a Gradle build to download them: "
+                    + String.join(", ", resolver.missing));
+        }
+        return new ClassPathCache.Inferred(found, resolver.missing.isEmpty());
+    }
+
+    /** The local repository, usually ~/.m2/repository, unless settings.xml moves it */
+    private Path mavenRepository() {
+        var settings = mavenHome.resolve("settings.xml");
+        if (Files.exists(settings)) {
+            try {
+                var matcher = LOCAL_REPOSITORY.matcher(Files.readString(settings));
+                if (matcher.find()) {
+                    var configured = matcher.group(1).trim().replace("${user.home}", System.getProperty("user.home"));
+                    return Paths.get(configured);
+                }
+            } catch (IOException e) {
+                LOG.warning("Failed to read " + settings + ": " + e.getMessage());
+            }
+        }
+        return mavenHome.resolve("repository");
+    }
+
+    private static final Pattern LOCAL_REPOSITORY = Pattern.compile("<localRepository>([^<]+)</localRepository>");
+
+    /**
+     * Hash of every pom.xml in the workspace, and of the local repository Maven resolves them to. Anything that can
+     * change what `mvn dependency:list` prints changes the hash.
+     */
+    String mavenFingerprint() {
+        return fingerprint(Set.of("pom.xml"));
+    }
+
+    /** Hash of the Gradle build files in the workspace, and of the caches they are resolved from */
+    String gradleFingerprint() {
+        return fingerprint(GradleBuild.FILES);
+    }
+
+    private String fingerprint(Set<String> names) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            for (var file : buildFiles(names)) {
+                digest.update(workspaceRoot.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(file));
+                digest.update((byte) 0);
+            }
+            digest.update(mavenHome.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(gradleHome.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            var settings = mavenHome.resolve("settings.xml");
+            if (Files.exists(settings)) {
+                digest.update(Files.readAllBytes(settings));
+            }
+            var hex = new StringBuilder();
+            for (var b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Files with one of `names` in the workspace, sorted, skipping hidden directories and build output */
+    private List<Path> buildFiles(Set<String> names) throws IOException {
+        var found = new ArrayList<Path>();
+        Files.walkFileTree(workspaceRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                var dirName = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(workspaceRoot) && (dirName.startsWith(".") || SKIP_DIRS.contains(dirName))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (names.contains(file.getFileName().toString())) {
+                    found.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        found.sort(null);
+        return found;
+    }
+
+    private static final Set<String> SKIP_DIRS = Set.of("target", "build", "node_modules");
+
     private Path findAnyJar(Artifact artifact, boolean source) {
         Path maven = findMavenJar(artifact, source);
 
@@ -159,6 +319,10 @@ class InferConfig {
 
     static Set<Path> mvnDependencies(Path pomXml, String goal) {
         Objects.requireNonNull(pomXml, "pom.xml path is null");
+        if (getMvnCommand() == null) {
+            LOG.warning("Couldn't find mvn on the PATH");
+            return Set.of();
+        }
         try {
             // TODO consider using mvn valide dependency:copy-dependencies -DoutputDirectory=??? instead
             // Run maven as a subprocess
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -15,16 +16,30 @@ class JavaCompilerService implements CompilerProvider {
     // Not modifiable! If you want to edit these, you need to create a new instance
     final Set<Path> classPath, docPath;
     final Set<String> addExports;
-    final ReusableCompiler compiler = new ReusableCompiler();
+    /** Which files can refer to which, going by the modules of the workspace */
+    final ModuleGraph modules;
+    final ReusableCompiler compiler;
     final Docs docs;
     final Set<String> jdkClasses = ScanClassPath.jdkTopLevelClasses(), classPathClasses;
-    // Diagnostics from the last compilation task
-    final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
-    // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
-    // TODO intercept files that aren't in the batch and erase method bodies so compilation is faster
+    // File manager for looking up source files outside of compile tasks
     final SourceFileManager fileManager;
+    /** Maximum number of compile tasks that can be open at the same time */
+    private final int poolSize;
+    /** Slots that no task is using right now, most recently used first */
+    private final Deque<Slot> idle = new ArrayDeque<>();
+    /** Number of slots that exist, whether idle or in use */
+    private int slots;
 
     JavaCompilerService(Set<Path> classPath, Set<Path> docPath, Set<String> addExports) {
+        this(classPath, docPath, addExports, 1);
+    }
+
+    JavaCompilerService(Set<Path> classPath, Set<Path> docPath, Set<String> addExports, int poolSize) {
+        this(classPath, docPath, addExports, poolSize, ModuleGraph.NONE);
+    }
+
+    JavaCompilerService(
+            Set<Path> classPath, Set<Path> docPath, Set<String> addExports, int poolSize, ModuleGraph modules) {
         LOG.warning("Class path:");
         for (var p : classPath) {
             LOG.warning("  " + p);
@@ -37,67 +52,128 @@ class JavaCompilerService implements CompilerProvider {
         this.classPath = Collections.unmodifiableSet(classPath);
         this.docPath = Collections.unmodifiableSet(docPath);
         this.addExports = Collections.unmodifiableSet(addExports);
+        this.modules = modules;
+        this.poolSize = Math.max(1, poolSize);
+        this.compiler = new ReusableCompiler(this.poolSize);
         this.docs = new Docs(docPath);
         this.classPathClasses = ScanClassPath.classPathTopLevelClasses(classPath);
         this.fileManager = new SourceFileManager();
     }
 
-    private CompileBatch cachedCompile;
-    private Map<JavaFileObject, Long> cachedModified = new HashMap<>();
-
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
-        }
-        for (var f : sources) {
-            if (!cachedModified.containsKey(f)) {
+    /**
+     * Everything one compile task needs for itself: javac file managers are not thread-safe, so every slot has its own.
+     * The slot keeps its last batch open, so that compiling the same sources again is free.
+     */
+    private class Slot {
+        // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
+        // Files that aren't in the batch have their method bodies erased, see EraseMethodBodies
+        final SourceFileManager fileManager = new SourceFileManager();
+        // Diagnostics from the last compilation task
+        final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
+        CompileBatch cachedCompile;
+        final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+
+        boolean needsCompile(Collection<? extends JavaFileObject> sources) {
+            if (cachedModified.size() != sources.size()) {
                 return true;
             }
-            if (f.getLastModified() != cachedModified.get(f)) {
-                return true;
+            for (var f : sources) {
+                if (!cachedModified.containsKey(f)) {
+                    return true;
+                }
+                if (f.getLastModified() != cachedModified.get(f)) {
+                    return true;
+                }
             }
+            return false;
         }
-        return false;
-    }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
+        void loadCompile(Collection<? extends JavaFileObject> sources, String word) {
+            if (cachedCompile != null) {
+                if (!cachedCompile.closed) {
+                    throw new RuntimeException("Compiler is still in-use!");
+                }
+                cachedCompile.borrow.close();
+                cachedCompile = null;
+            }
+            cachedModified.clear();
+            cachedCompile = doCompile(sources, word);
+            for (var f : sources) {
+                cachedModified.put(f, f.getLastModified());
             }
-            cachedCompile.borrow.close();
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (var f : sources) {
-            cachedModified.put(f, f.getLastModified());
+
+        CompileBatch doCompile(Collection<? extends JavaFileObject> sources, String word) {
+            if (sources.isEmpty()) throw new RuntimeException("empty sources");
+            var firstAttempt = new CompileBatch(JavaCompilerService.this, fileManager, diags, sources, word);
+            Set<Path> addFiles;
+            try {
+                addFiles = firstAttempt.needsAdditionalSources();
+            } catch (RuntimeException e) {
+                firstAttempt.borrow.close();
+                throw e;
+            }
+            if (addFiles.isEmpty()) return firstAttempt;
+            // If the compiler needs additional source files that contain package-private files
+            LOG.info("...need to recompile with " + addFiles);
+            firstAttempt.close();
+            firstAttempt.borrow.close();
+            var moreSources = new ArrayList<JavaFileObject>();
+            moreSources.addAll(sources);
+            for (var add : addFiles) {
+                moreSources.add(new SourceFileObject(add));
+            }
+            return new CompileBatch(JavaCompilerService.this, fileManager, diags, moreSources, word);
         }
-    }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
-        if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        var firstAttempt = new CompileBatch(this, sources);
-        var addFiles = firstAttempt.needsAdditionalSources();
-        if (addFiles.isEmpty()) return firstAttempt;
-        // If the compiler needs additional source files that contain package-private files
-        LOG.info("...need to recompile with " + addFiles);
-        firstAttempt.close();
-        firstAttempt.borrow.close();
-        var moreSources = new ArrayList<JavaFileObject>();
-        moreSources.addAll(sources);
-        for (var add : addFiles) {
-            moreSources.add(new SourceFileObject(add));
+        CompileBatch compileBatch(Collection<? extends JavaFileObject> sources, String word) {
+            if (needsCompile(sources)) {
+                loadCompile(sources, word);
+            } else {
+                LOG.fine("...using cached compile");
+                try {
+                    cachedCompile.attribute(word);
+                } catch (RuntimeException | Error e) {
+                    // A batch that failed half way through must not be handed out again for the same sources
+                    cachedCompile.close();
+                    cachedCompile.borrow.failed = true;
+                    cachedCompile.borrow.close();
+                    cachedCompile = null;
+                    cachedModified.clear();
+                    throw e;
+                }
+            }
+            cachedCompile.closed = false;
+            return cachedCompile;
         }
-        return new CompileBatch(this, moreSources);
     }
 
-    private CompileBatch compileBatch(Collection<? extends JavaFileObject> sources) {
-        if (needsCompile(sources)) {
-            loadCompile(sources);
-        } else {
-            LOG.fine("...using cached compile");
+    /** Take the idle slot that already compiled `sources`, or else the least recently used one */
+    private synchronized Slot checkOut(Collection<? extends JavaFileObject> sources) {
+        while (idle.isEmpty() && slots >= poolSize) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        for (var slot : idle) {
+            if (slot.cachedCompile != null && !slot.needsCompile(sources)) {
+                idle.remove(slot);
+                return slot;
+            }
         }
-        return cachedCompile;
+        if (idle.isEmpty() || slots < poolSize && idle.peekLast().cachedCompile != null) {
+            slots++;
+            return new Slot();
+        }
+        return idle.removeLast();
+    }
+
+    private synchronized void checkIn(Slot slot) {
+        idle.push(slot);
+        notifyAll();
     }
 
     private static final Pattern PACKAGE_EXTRACTOR = Pattern.compile("^([a-z][_a-zA-Z0-9]*\\.)*[a-z][_a-zA-Z0-9]*");
@@ -120,37 +196,39 @@ class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    /** Weigh lists of names by their length, so a few files with huge lists can't fill the cache */
+    private static final long MAX_CACHED_NAMES = 1_000_000;
+
+    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>("containsWord", 200_000, (k, v) -> 1);
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
+        return cacheContainsWord.get(file, word, () -> WordIndex.containsWord(file, word));
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType =
+            new Cache<>("containsType", MAX_CACHED_NAMES, (k, types) -> 1 + types.size());
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
-            var root = parse(file).root;
-            var types = new ArrayList<String>();
-            new FindTypeDeclarations().scan(root, types);
-            cacheContainsType.load(file, null, types);
-        }
-        return cacheContainsType.get(file, null).contains(className);
+        var types =
+                cacheContainsType.get(
+                        file,
+                        null,
+                        () -> {
+                            var found = new ArrayList<String>();
+                            new FindTypeDeclarations().scan(parse(file).root, found);
+                            return found;
+                        });
+        return types.contains(className);
     }
 
-    private Cache<Void, List<String>> cacheFileImports = new Cache<>();
+    private Cache<Void, List<String>> cacheFileImports =
+            new Cache<>("fileImports", MAX_CACHED_NAMES, (k, imports) -> 1 + imports.size());
 
     private List<String> readImports(Path file) {
-        if (cacheFileImports.needs(file, null)) {
-            loadImports(file);
-        }
-        return cacheFileImports.get(file, null);
+        return cacheFileImports.get(file, null, () -> loadImports(file));
     }
 
-    private void loadImports(Path file) {
+    private List<String> loadImports(Path file) {
         var list = new ArrayList<String>();
         var importClass = Pattern.compile("^import +([\\w\\.]+\\.\\w+);");
         var importStar = Pattern.compile("^import +([\\w\\.]+\\.\\*);");
@@ -173,7 +251,7 @@ class JavaCompilerService implements CompilerProvider {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        cacheFileImports.load(file, null, list);
+        return list;
     }
 
     @Override
@@ -306,19 +384,74 @@ class JavaCompilerService implements CompilerProvider {
     public Path[] findTypeReferences(String className) {
         var packageName = packageName(className);
         var simpleName = simpleName(className);
+        var canRefer = canRefer(className);
         var candidates = new ArrayList<Path>();
-        for (var f : FileStore.all()) {
-            if (containsWord(f, packageName) && containsImport(f, className) && containsWord(f, simpleName)) {
+        for (var f : WordIndex.candidates(simpleName)) {
+            if (canRefer.test(f) && containsWord(f, packageName) && containsImport(f, className)) {
                 candidates.add(f);
             }
         }
         return candidates.toArray(Path[]::new);
     }
 
+    /**
+     * {@link #findTypeReferences(String)} of every class at once. A file that may refer to several of them is searched
+     * for all of their package names in one pass.
+     */
+    @Override
+    public Map<String, Path[]> findTypeReferences(Collection<String> classNames) {
+        var mentioned = new TreeMap<Path, List<String>>();
+        for (var className : classNames) {
+            var canRefer = canRefer(className);
+            for (var f : WordIndex.candidates(simpleName(className))) {
+                if (!canRefer.test(f)) continue;
+                mentioned.computeIfAbsent(f, k -> new ArrayList<>()).add(className);
+            }
+        }
+        var candidates = new LinkedHashMap<String, List<Path>>();
+        for (var className : classNames) {
+            candidates.put(className, new ArrayList<>());
+        }
+        // Files that mention the same classes look for the same packages, with the same automaton
+        var searches = new HashMap<Set<String>, MultiWordSearch>();
+        for (var e : mentioned.entrySet()) {
+            var packageNames = new HashSet<String>();
+            for (var className : e.getValue()) {
+                packageNames.add(packageName(className));
+            }
+            var search = searches.computeIfAbsent(packageNames, MultiWordSearch::new);
+            var found = WordIndex.containedWords(e.getKey(), search);
+            for (var className : e.getValue()) {
+                var packageName = packageName(className);
+                var named = packageName.isEmpty() || found.contains(packageName);
+                if (named && containsImport(e.getKey(), className)) {
+                    candidates.get(className).add(e.getKey());
+                }
+            }
+        }
+        var result = new LinkedHashMap<String, Path[]>();
+        for (var e : candidates.entrySet()) {
+            result.put(e.getKey(), e.getValue().toArray(Path[]::new));
+        }
+        return result;
+    }
+
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
+        var canSee = canRefer(className).and(canSee(className, memberName));
         var candidates = new ArrayList<Path>();
-        for (var f : FileStore.all()) {
+        for (var f : WordIndex.candidates(memberName)) {
+            if (canSee.test(f) && containsWord(f, memberName)) {
+                candidates.add(f);
+            }
+        }
+        return candidates.toArray(Path[]::new);
+    }
+
+    @Override
+    public Path[] findMemberReferences(String memberName) {
+        var candidates = new ArrayList<Path>();
+        for (var f : WordIndex.candidates(memberName)) {
             if (containsWord(f, memberName)) {
                 candidates.add(f);
             }
@@ -326,6 +459,50 @@ class JavaCompilerService implements CompilerProvider {
         return candidates.toArray(Path[]::new);
     }
 
+    /** Files in modules that can see the module `className` is declared in */
+    private Predicate<Path> canRefer(String className) {
+        if (modules.size() < 2 || className.isEmpty()) return f -> true;
+        var file = findTypeDeclaration(className);
+        if (file == NOT_FOUND) return f -> true;
+        return modules.canRefer(file);
+    }
+
+    /**
+     * Which files can refer to `memberName` of `className`, going by the access modifiers of the member, the type and
+     * its subtypes. A public member of a public type can be reached through an expression whose type is never named,
+     * like `list.get(0).run()`, so every file can see those.
+     */
+    private Predicate<Path> canSee(String className, String memberName) {
+        if (className.isEmpty()) return f -> true;
+        var file = findTypeDeclaration(className);
+        if (file == NOT_FOUND) return f -> true;
+        var root = parse(file).root;
+        var member = Access.ofMember(root, className, memberName);
+        var type = Access.ofType(root, className);
+        if (member == Access.PRIVATE || type == Access.PRIVATE) return file::equals;
+        if (member == Access.PUBLIC && type.compareTo(Access.PROTECTED) >= 0) return f -> true;
+        var subtypes = TypeHierarchy.allSubtypes(className);
+        // A member of a type that isn't public is still visible through a public subtype
+        for (var subtype : subtypes) {
+            if (type.compareTo(Access.PROTECTED) >= 0) break;
+            var declaration = findTypeDeclaration(subtype);
+            var access = declaration == NOT_FOUND ? Access.PUBLIC : Access.ofType(parse(declaration).root, subtype);
+            type = type.widest(access);
+        }
+        var packageName = FileStore.packageName(file);
+        Predicate<Path> samePackage = f -> FileStore.packageName(f).equals(packageName);
+        if (member == Access.PACKAGE || type == Access.PACKAGE) return samePackage;
+        if (member == Access.PUBLIC) return f -> true;
+        // Outside the package, only subclasses can refer to a protected member, and their files name what they extend
+        var names = new HashSet<String>();
+        names.add(simpleName(className));
+        for (var subtype : subtypes) {
+            names.add(simpleName(subtype));
+        }
+        var search = new MultiWordSearch(names);
+        return samePackage.or(f -> !WordIndex.containedWords(f, search).isEmpty());
+    }
+
     @Override
     public ParseTask parse(Path file) {
         var parser = Parser.parseFile(file);
@@ -349,8 +526,35 @@ class JavaCompilerService implements CompilerProvider {
 
     @Override
     public CompileTask compile(Collection<? extends JavaFileObject> sources) {
-        var compile = compileBatch(sources);
-        return new CompileTask(compile.task, compile.roots, diags, compile::close);
+        return compile(sources, null);
+    }
+
+    @Override
+    public CompileTask compileMentioning(String word, Path... files) {
+        var sources = new ArrayList<JavaFileObject>();
+        for (var f : files) {
+            sources.add(new SourceFileObject(f));
+        }
+        return compile(sources, word);
+    }
+
+    private CompileTask compile(Collection<? extends JavaFileObject> sources, String word) {
+        var slot = checkOut(sources);
+        CompileBatch compile;
+        try {
+            compile = slot.compileBatch(sources, word);
+        } catch (RuntimeException e) {
+            checkIn(slot);
+            throw e;
+        }
+        var released = new AtomicBoolean();
+        Runnable close = () -> {
+            if (released.compareAndSet(false, true)) {
+                compile.close();
+                checkIn(slot);
+            }
+        };
+        return new CompileTask(compile.task, compile.roots, slot.diags, close);
     }
 
     private static final Logger LOG = Logger.getLogger("main");
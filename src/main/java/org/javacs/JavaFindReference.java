@@ -5,8 +5,8 @@ import javax.lang.model.element.TypeElement;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -17,12 +17,21 @@ public class JavaFindReference {
     private static final Logger LOG = Logger.getLogger("JavaFindReference");
 
     private Path workspaceRoot;
+    /** Number of worker threads used to walk the reference graph */
+    private final int threads;
     private boolean modifiedBuild = true;
     private JavaCompilerService cacheCompiler;
+    /** Persistent member references, only used when an index directory is given */
+    private ReferenceIndex index;
+    /** Bring the index up to date from the git diff alone instead of checking every file */
+    private boolean incremental;
+    private CallGraph callGraph;
+    /** The modules of the workspace, read from its build files once and shared by every compiler */
+    private ModuleGraph modules;
     private Map<String, JavaCompilerService> specialCacheCompiler = new HashMap<>();
     public final Set<String> specialMethods = new HashSet<>(Arrays.asList("configure", "setup", "setUp", "tearDown"));
 
-    JavaCompilerService compiler() {
+    synchronized JavaCompilerService compiler() {
         if (modifiedBuild) {
             cacheCompiler = createCompiler();
             modifiedBuild = false;
@@ -30,7 +39,7 @@ public class JavaFindReference {
         return cacheCompiler;
     }
 
-    public Optional<JavaCompilerService> compiler(String methodName) {
+    public synchronized Optional<JavaCompilerService> compiler(String methodName) {
         if (specialMethods.contains(methodName)) {
             if (!specialCacheCompiler.containsKey(methodName)) {
                 var compiler = createCompiler();
@@ -42,10 +51,57 @@ public class JavaFindReference {
     }
 
     public JavaFindReference(Path rootDir) {
+        this(rootDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    public JavaFindReference(Path rootDir, int threads) {
         this.workspaceRoot = rootDir;
+        this.threads = threads;
         FileStore.setWorkspaceRoots(Set.of(rootDir));
     }
 
+    /** Answer member lookups from the reference index stored in `indexDir`, creating it if it does not exist */
+    public void useIndex(Path indexDir) {
+        useIndex(indexDir, false);
+    }
+
+    /**
+     * With `incremental`, the index is expected to be saved from the parent of the diffed commit, and only the files
+     * touched by the diff are indexed again.
+     */
+    public void useIndex(Path indexDir, boolean incremental) {
+        index = ReferenceIndex.load(indexDir);
+        this.incremental = incremental;
+    }
+
+    public void saveIndex() {
+        if (index != null) {
+            index.save(GitDiffParser.revParse(workspaceRoot, "HEAD"));
+        }
+    }
+
+    /**
+     * Catch up with files that were edited, created or deleted since the last request, and forget what was compiled
+     * from them. A finder that is kept warm calls this before every request.
+     */
+    public void refreshChangedFiles() {
+        ReferenceProvider.forgetChanged(FileStore.refresh());
+    }
+
+    /** Answer leaf lookups from the call graph exported to `file`, without compiling anything */
+    public void useCallGraph(Path file) {
+        callGraph = CallGraph.load(file);
+    }
+
+    /** Compute the call graph of the whole workspace and save it to `file` */
+    public void exportCallGraph(Path file) {
+        CallGraph.build(compiler()).save(file);
+    }
+
+    Optional<ReferenceIndex> index() {
+        return Optional.ofNullable(index);
+    }
+
     public static boolean isJavaFile(Path file) {
         var name = file.getFileName().toString();
         return name.endsWith(".java") && !Files.isDirectory(file)
@@ -76,33 +132,52 @@ public class JavaFindReference {
         return Optional.of(found);
     }
 
+    /** The method or field a position is in */
+    static class Owner {
+        static final Owner NONE = new Owner("", ElementKind.OTHER, "");
+
+        /** `ClassName::member`, empty if the position isn't inside a method or field */
+        final String key;
+        final ElementKind kind;
+        /** `ClassName::member(erasedParams)`, which tells overloads apart; empty if it has no qualified name */
+        final String symbol;
+
+        Owner(String key, ElementKind kind, String symbol) {
+            this.key = key;
+            this.kind = kind;
+            this.symbol = symbol;
+        }
+    }
+
     public AbstractMap.Entry<String, ElementKind> getMethodLevelElement(FilePosition position) {
+        var owner = findOwner(position);
+        return new AbstractMap.SimpleEntry<>(owner.key, owner.kind);
+    }
+
+    Owner findOwner(FilePosition position) {
         try (var task = compiler().compile(position.path)) {
             var element = NavigationHelper.findElementMethodLevel(task, position.path, position.line,
                     position.character);
             if (element == null) {
                 LOG.info(String.format("Could not find element at (%s:%d:%d)", position.path, position.line,
                         position.character));
-                return new AbstractMap.SimpleEntry<>("", ElementKind.OTHER);
+                return Owner.NONE;
             }
-            if (element.getKind() == ElementKind.METHOD || element.getKind() == ElementKind.CONSTRUCTOR) {
+            var kind = element.getKind();
+            if (kind == ElementKind.METHOD || kind == ElementKind.CONSTRUCTOR || kind == ElementKind.FIELD) {
                 var parentClass = (TypeElement) element.getEnclosingElement();
                 var className = parentClass.getQualifiedName().toString();
                 var memberName = element.getSimpleName().toString();
                 if (memberName.equals("<init>")) {
                     memberName = parentClass.getSimpleName().toString();
                 }
-                task.close();
-                return new AbstractMap.SimpleEntry<>(className + "::" + memberName, element.getKind());
-            } else if (element.getKind() == ElementKind.FIELD) {
-                var parentClass = (TypeElement) element.getEnclosingElement();
-                var className = parentClass.getQualifiedName().toString();
-                var memberName = element.getSimpleName().toString();
-                task.close();
-                return new AbstractMap.SimpleEntry<>(className + "::" + memberName, element.getKind());
+                var key = className + "::" + memberName;
+                // Members of anonymous and local classes all look alike without a class name
+                var symbol = className.isEmpty() ? "" : key + ReferenceIndex.signature(task.task.getTypes(), element);
+                return new Owner(key, kind, symbol);
             } else {
                 LOG.info(String.format("Not a method at (%s:%d:%d)", position.path, position.line, position.character));
-                return new AbstractMap.SimpleEntry<>("", ElementKind.OTHER);
+                return Owner.NONE;
             }
         }
     }
@@ -112,8 +187,7 @@ public class JavaFindReference {
         LOG.info(String.format("Handle special method %s add %s", method, className));
         var impactClasses = new HashSet<String>();
         impactClasses.add(className);
-        var inherits = new ArrayList<String>();
-        getAllTypeInherits(className, inherits);
+        var inherits = TypeHierarchy.allSubtypes(className);
         if (!inherits.isEmpty()) {
             impactClasses.addAll(inherits);
         }
@@ -121,93 +195,146 @@ public class JavaFindReference {
         return impactClasses;
     }
 
-    private FilePosition fromLocation(Location location) {
-        return new FilePosition(Paths.get(location.uri), location.range.start.line + 1, location.range.start.character + 1);
+    public Set<String> findLeafReferences(List<FilePosition> modifiedLines, List<String> specialMethods, int depth) {
+        if (callGraph != null) {
+            return callGraph.findLeafReferences(modifiedLines, specialMethods, depth);
+        }
+        try (var walker = new ReferenceWalker(this, threads)) {
+            var owners = owners(walker, modifiedLines);
+            var leaves = walker.walk(starts(modifiedLines, owners).values(), depth);
+            var leafMethods = new TreeSet<String>();
+            for (var methods : leafMethods(walker, leaves, specialMethods).values()) {
+                leafMethods.addAll(methods);
+            }
+            return leafMethods;
+        }
+    }
+
+    /**
+     * Find the leaf methods of every position separately. The reference graph is explored once for all of them, and
+     * positions inside the same method share the search.
+     */
+    public Map<FilePosition, Set<String>> findLeafReferencesBatch(List<FilePosition> positions,
+            List<String> specialMethods, int depth) {
+        if (callGraph != null) {
+            return callGraph.findLeafReferencesBatch(positions, specialMethods, depth);
+        }
+        try (var walker = new ReferenceWalker(this, threads)) {
+            var owners = owners(walker, positions);
+            var starts = starts(positions, owners);
+            walker.explore(starts.values(), depth);
+
+            var ownerLeaves = new HashMap<String, Set<FilePosition>>();
+            var allLeaves = new HashSet<FilePosition>();
+            for (var start : starts.entrySet()) {
+                var leaves = walker.leaves(start.getValue(), depth);
+                ownerLeaves.put(start.getKey(), leaves);
+                allLeaves.addAll(leaves);
+            }
+            var leafMethods = leafMethods(walker, allLeaves, specialMethods);
+
+            var result = new LinkedHashMap<FilePosition, Set<String>>();
+            for (var i = 0; i < positions.size(); i++) {
+                var methods = new TreeSet<String>();
+                var owner = owners.get(i);
+                if (owner != null) {
+                    for (var leaf : ownerLeaves.get(owner)) {
+                        methods.addAll(leafMethods.get(leaf));
+                    }
+                }
+                result.put(positions.get(i), methods);
+            }
+            return result;
+        }
     }
 
-    public Set<String> findLeafReferences(List<FilePosition> modifiedLines, List<String> specialMethods, int depth) {
-        var leaves = new HashSet<FilePosition>();
-        var parsedLocations = new HashSet<Location>();
+    /** The method or field that owns each line, keyed by the index of the line */
+    private Map<Integer, String> owners(ReferenceWalker walker, List<FilePosition> lines) {
+        var owners = new ConcurrentHashMap<Integer, String>();
+        var indexes = new ArrayList<Integer>();
+        for (var i = 0; i < lines.size(); i++) {
+            indexes.add(i);
+        }
+        walker.forEach(indexes, i -> {
+            var owner = walker.owner(lines.get(i));
+            if (owner.key.contains("::")) {
+                owners.put(i, owner.key);
+            }
+        });
+        return owners;
+    }
 
-        var parsedMethod = new HashSet<String>();
-        for (var line : modifiedLines) {
-            var element = getMethodLevelElement(line);
-            if (element.getKey().isEmpty()) {
+    /** When several lines belong to the same owner, the search starts from the first of them only */
+    private Map<String, FilePosition> starts(List<FilePosition> lines, Map<Integer, String> owners) {
+        var starts = new LinkedHashMap<String, FilePosition>();
+        for (var i = 0; i < lines.size(); i++) {
+            var line = lines.get(i);
+            var owner = owners.get(i);
+            if (owner == null) {
                 continue;
             }
-
-            if (!parsedMethod.contains(element.getKey()) && element.getKey().contains("::")) {
+            if (!starts.containsKey(owner)) {
                 LOG.info(String.format("Change %s(%d:%d) is owned by %s", line.path.getFileName(), line.line,
-                        line.character, element));
-                parsedMethod.add(element.getKey());
-                findReferencesR(line, leaves, parsedLocations, depth);
+                        line.character, owner));
+                starts.put(owner, line);
             } else {
-                LOG.info(String.format("Change %s(%d:%d) is parsed before by %s", line.path.getFileName(), line.line,
-                        line.character, element));
+                LOG.info(String.format("Change %s(%d:%d) is parsed before by %s", line.path.getFileName(),
+                        line.line, line.character, owner));
             }
         }
-        var leafMethods = new HashSet<String>();
-        for (var l : leaves) {
-            var element = getMethodLevelElement(l);
-            if (element.getValue() == ElementKind.METHOD) {
-	            if (specialMethods.stream().anyMatch(e -> element.getKey().endsWith(e))) {
-	                leafMethods.addAll(handleSpecialMethod(element.getKey()));
-	            } else {
-	                leafMethods.add(element.getKey());
-	            }
+        return starts;
+    }
+
+    /** The leaf methods of every leaf position, which is more than one for special methods */
+    private Map<FilePosition, Set<String>> leafMethods(ReferenceWalker walker, Collection<FilePosition> leaves,
+            List<String> specialMethods) {
+        var leafMethods = new ConcurrentHashMap<FilePosition, Set<String>>();
+        walker.forEach(leaves, l -> {
+            var owner = walker.owner(l);
+            if (owner.kind != ElementKind.METHOD) {
+                leafMethods.put(l, Set.of());
+            } else if (specialMethods.stream().anyMatch(e -> owner.key.endsWith(e))) {
+                leafMethods.put(l, handleSpecialMethod(owner.key));
+            } else {
+                leafMethods.put(l, Set.of(owner.key));
             }
-        }
+        });
         return leafMethods;
     }
 
     public Set<String> findLeafReferences(List<String> specialMethods, int depth) {
-        var modifiedLines = new GitDiffParser(workspaceRoot).parse();
-        return findLeafReferences(modifiedLines, specialMethods, depth);
+        return findLeafReferences(new GitDiffParser(workspaceRoot), specialMethods, depth);
     }
 
-    private void getAllTypeInherits(String className, List<String> inherits) {
-        var inheritClasses = NavigationHelper.findTypeImplementations(compiler(), className);
-        for (var c : inheritClasses) {
-            if (inherits.contains(c)) {
-                continue;
+    /** Find the leaves of the changes in `diff`, the output of `git diff` in the workspace */
+    public Set<String> findLeafReferences(String diff, List<String> specialMethods, int depth) {
+        return findLeafReferences(new GitDiffParser(workspaceRoot, diff), specialMethods, depth);
+    }
+
+    private Set<String> findLeafReferences(GitDiffParser diff, List<String> specialMethods, int depth) {
+        // Files may have changed on disk since they were first read, which matters when the finder is kept warm
+        for (var file : diff.deletedFiles()) {
+            FileStore.externalDelete(file);
+        }
+        for (var file : diff.touchedFiles()) {
+            FileStore.externalChange(file);
+        }
+        var modifiedLines = diff.parse();
+        try {
+            if (index != null && incremental) {
+                index.update(compiler(), diff.touchedFiles(), diff.deletedFiles(), diff.baseCommit());
+            }
+            return findLeafReferences(modifiedLines, specialMethods, depth);
+        } finally {
+            if (index != null) {
+                index.endRequest();
             }
-            inherits.add(c);
-            getAllTypeInherits(c, inherits);
         }
     }
 
     public Set<FilePosition> findLeafReferences(FilePosition position, int depth) {
-        var leaves = new HashSet<FilePosition>();
-        var parsedLocations = new HashSet<Location>();
-        findReferencesR(position, leaves, parsedLocations, depth);
-        return leaves;
-    }
-
-    private void findReferencesR(FilePosition position, Set<FilePosition> leaves,
-            Set<Location> parsedLocations, int depth) {
-        if (depth == 0) {
-            return;
-        }
-
-        var element = getMethodLevelElement(position);
-        LOG.fine(String.format("Find reference for %s(%d:%d) is owned by %s", position.path.getFileName(), position.line,
-                               position.character, element));
-        var locations = findReferences(position).orElse(List.of());
-        if (locations.isEmpty()) {
-            LOG.fine(String.format("Not found reference for %s(%d:%d) is owned by %s", position.path.getFileName(), position.line,
-                               position.character, element));
-            leaves.add(position);
-        } else {
-            for (Location l : locations) {
-                var fp = fromLocation(l);
-                LOG.fine(String.format("Found reference for %s(%d:%d)", fp.path.getFileName(), fp.line,
-                        fp.character));
-                if (parsedLocations.contains(l)) {
-                    continue;
-                }
-                parsedLocations.add(l);
-                findReferencesR(fp, leaves, parsedLocations, depth - 1);
-            }
+        try (var walker = new ReferenceWalker(this, threads)) {
+            return walker.walk(List.of(position), depth);
         }
     }
 
@@ -230,18 +357,21 @@ public class JavaFindReference {
         var externalDependencies = externalDependencies();
         var classPath = classPath();
         var addExports = addExports();
+        var infer = new InferConfig(workspaceRoot, externalDependencies);
+        if (modules == null) {
+            modules = infer.moduleGraph();
+        }
         // If classpath is specified by the user, don't infer anything
         if (!classPath.isEmpty()) {
-            return new JavaCompilerService(classPath, Collections.emptySet(), addExports);
+            return new JavaCompilerService(classPath, Collections.emptySet(), addExports, threads, modules);
         }
         // Otherwise, combine inference with user-specified external dependencies
         else {
-            var infer = new InferConfig(workspaceRoot, externalDependencies);
             classPath = infer.classPath();
 
             var docPath = infer.buildDocPath();
 
-            return new JavaCompilerService(classPath, docPath, addExports);
+            return new JavaCompilerService(classPath, docPath, addExports, threads, modules);
         }
     }
 }
@@ -7,8 +7,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import com.google.gson.Gson;
@@ -27,25 +29,56 @@ public class Main {
     private static final Logger LOG = Logger.getLogger("main");
 
     private static void findReferences(MainArgs options) {
-        JavaFindReference finder = new JavaFindReference(Path.of(options.workspace));
+        JavaFindReference finder = new JavaFindReference(Path.of(options.workspace), options.threads);
+        if (!options.indexDir.isEmpty()) {
+            finder.useIndex(Path.of(options.indexDir), options.incremental);
+        }
+        if (!options.exportCallGraph.isEmpty()) {
+            finder.exportCallGraph(Path.of(options.exportCallGraph));
+            return;
+        }
+        if (!options.callGraph.isEmpty()) {
+            finder.useCallGraph(Path.of(options.callGraph));
+        }
+        if (options.daemonPort != 0) {
+            try (var daemon = new Daemon(finder, options.daemonPort)) {
+                daemon.serve();
+            }
+            return;
+        }
+        try {
+            findReferences(finder, options);
+        } finally {
+            finder.saveIndex();
+            Cache.logStatistics();
+        }
+    }
 
+    private static void findReferences(JavaFindReference finder, MainArgs options) {
         if (!options.grepOutput.isEmpty()) {
+            var lines = new ArrayList<String>();
+            var positions = new ArrayList<FilePosition>();
             try (BufferedReader br = new BufferedReader(new FileReader(options.grepOutput))) {
                 String line;
                 while ((line = br.readLine()) != null) {
-                    long startTime = System.nanoTime();
                     var tokens = line.split(":");
-                    var position = new FilePosition(new File(tokens[0]).toPath(),
-                            Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
-                    var leafMethods = finder.findLeafReferences(Arrays.asList(position),
-                            options.specialMethods, options.depth);
-                    handleLeafMethods(leafMethods, (tokens[0] + ":" + tokens[1] + ":" + tokens[2]).replaceAll(File.separator, "-") + ".json");
-                    long stopTime = System.nanoTime();
-                    LOG.info("== Handling " + line + " takes " + (stopTime - startTime)/1000000000);
+                    lines.add(tokens[0] + ":" + tokens[1] + ":" + tokens[2]);
+                    positions.add(new FilePosition(new File(tokens[0]).toPath(),
+                            Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2])));
                 }
             } catch (IOException e) {
                 e.printStackTrace();
+                return;
+            }
+            long startTime = System.nanoTime();
+            var leafMethods = finder.findLeafReferencesBatch(positions, options.specialMethods, options.depth);
+            for (var i = 0; i < positions.size(); i++) {
+                LOG.info("== Leaf methods of " + lines.get(i));
+                handleLeafMethods(leafMethods.get(positions.get(i)),
+                        lines.get(i).replaceAll(File.separator, "-") + ".json");
             }
+            long stopTime = System.nanoTime();
+            LOG.info("== Handling " + positions.size() + " lines takes " + (stopTime - startTime)/1000000000);
             return;
         }
 
@@ -59,6 +92,29 @@ public class Main {
         handleLeafMethods(leafMethods, options.outputJsonFile);
     }
 
+    private static void sendToDaemon(MainArgs options) {
+        var request = new Daemon.Request();
+        if (options.shutdown) {
+            request.command = Daemon.SHUTDOWN;
+        } else if (options.position != null) {
+            request.positions.add(String.format("%s:%d:%d", options.position.path.toAbsolutePath(),
+                    options.position.line, options.position.character));
+        } else {
+            request.diff = new GitDiffParser(Path.of(options.workspace)).diff();
+        }
+        request.specialMethods.addAll(options.specialMethods);
+        request.depth = options.depth;
+
+        var response = Daemon.send(options.clientPort, request);
+        if (response.error != null) {
+            System.err.println("Daemon failed: " + response.error);
+            return;
+        }
+        if (!options.shutdown) {
+            handleLeafMethods(new TreeSet<>(response.methods), options.outputJsonFile);
+        }
+    }
+
     public static void handleLeafMethods(Set<String> leafMethods, String outputJsonFile) {
         LOG.info(String.format("Find candidate leaf methods: %d", leafMethods.size()));
         leafMethods.forEach(System.out::println);
@@ -85,6 +141,10 @@ public class Main {
             return;
         }
 
+        if (options.clientPort != 0) {
+            sendToDaemon(options);
+            return;
+        }
         findReferences(options);
     }
 }
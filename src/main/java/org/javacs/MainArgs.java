@@ -22,6 +22,14 @@ public class MainArgs {
     public int depth = -1;
     public FilePosition position = null;
     public String grepOutput = "";
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public String indexDir = "";
+    public boolean incremental = false;
+    public int daemonPort = 0;
+    public int clientPort = 0;
+    public boolean shutdown = false;
+    public String exportCallGraph = "";
+    public String callGraph = "";
 
     private Options options = new Options();
 
@@ -60,7 +68,38 @@ public class MainArgs {
         options.addOption(outputJsonFile);
         options.addOption(searchDepth);
         options.addOption(position);
+        Option threads = Option.builder("threads").argName("count").hasArg()
+                .desc("Number of worker threads used to search references, default is the number of processors.")
+                .build();
+        Option indexDir = Option.builder("indexDir").argName("dir").hasArg()
+                .desc("Directory to keep the reference index in, so later runs only compile the files changed since.")
+                .build();
         options.addOption(grep);
+        options.addOption(threads);
+        Option incremental = new Option("incremental", false,
+                "Only re-index the files in the git diff, trusting the rest of the index given by -indexDir "
+                        + "when it was saved at the commit the diff starts from.");
+        Option daemon = Option.builder("daemon").argName("port").hasArg()
+                .desc("Keep running and answer requests from -client on the given localhost port.")
+                .build();
+        Option client = Option.builder("client").argName("port").hasArg()
+                .desc("Send the request to the daemon on the given localhost port instead of searching in process.")
+                .build();
+        Option shutdown = new Option("shutdown", false, "With -client, stop the daemon.");
+        options.addOption(indexDir);
+        options.addOption(incremental);
+        options.addOption(daemon);
+        options.addOption(client);
+        options.addOption(shutdown);
+        Option exportCallGraph = Option.builder("exportCallGraph").argName("file").hasArg()
+                .desc("Compute the call graph of the whole workspace, save it to the file and exit.")
+                .build();
+        Option callGraph = Option.builder("callGraph").argName("file").hasArg()
+                .desc("Find the leaf methods in the call graph saved by -exportCallGraph instead of compiling the "
+                        + "workspace.")
+                .build();
+        options.addOption(exportCallGraph);
+        options.addOption(callGraph);
     }
 
     private void parse(String[] args) {
@@ -82,6 +121,43 @@ public class MainArgs {
             if(line.hasOption("searchDepth")) {
                 this.depth = Integer.parseInt(line.getOptionValue("searchDepth"));
             }
+            if(line.hasOption("threads")) {
+                try {
+                    this.threads = Integer.parseInt(line.getOptionValue("threads"));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid thread count");
+                }
+                if (this.threads < 1) {
+                    throw new ParseException("Thread count must be at least 1");
+                }
+            }
+            if(line.hasOption("indexDir")) {
+                this.indexDir = line.getOptionValue("indexDir");
+            }
+            if(line.hasOption("incremental")) {
+                if (this.indexDir.isEmpty()) {
+                    throw new ParseException("Incremental mode needs an index directory");
+                }
+                this.incremental = true;
+            }
+            if(line.hasOption("daemon")) {
+                this.daemonPort = parsePort(line.getOptionValue("daemon"));
+            }
+            if(line.hasOption("client")) {
+                this.clientPort = parsePort(line.getOptionValue("client"));
+            }
+            if(line.hasOption("shutdown")) {
+                if (this.clientPort == 0) {
+                    throw new ParseException("Shutdown needs a daemon port given by -client");
+                }
+                this.shutdown = true;
+            }
+            if(line.hasOption("exportCallGraph")) {
+                this.exportCallGraph = line.getOptionValue("exportCallGraph");
+            }
+            if(line.hasOption("callGraph")) {
+                this.callGraph = line.getOptionValue("callGraph");
+            }
             if(line.hasOption("grepOutput")) {
                 this.grepOutput = line.getOptionValue("grepOutput");
             }
@@ -114,4 +190,17 @@ public class MainArgs {
             System.err.println("Parsing failed.  Reason: " + exp.getMessage());
         }
     }
+
+    private static int parsePort(String value) throws ParseException {
+        int port;
+        try {
+            port = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid port");
+        }
+        if (port < 1 || port > 65535) {
+            throw new ParseException("Port must be between 1 and 65535");
+        }
+        return port;
+    }
 }
@@ -0,0 +1,657 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Resolves the dependencies of a Maven project without running Maven. The pom.xml files of the workspace and the poms
+ * in the local repository are read directly: parents, properties, dependencyManagement, imported BOMs, exclusions,
+ * optional dependencies and scopes are applied like Maven does, and version conflicts are settled by the nearest
+ * declaration. Profiles that are active by default are applied. Nothing is downloaded, artifacts that aren't in the
+ * local repository and profiles only Maven can decide on are reported in {@link #missing}.
+ * Gradle's module cache keeps the poms too, so it resolves Gradle dependencies the same way.
+ */
+class MavenResolver {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /** Searched in order for every artifact */
+    private final List<Repository> repositories;
+    /** pom.xml of every module of the workspace, by `groupId:artifactId:version`, which win over the repository */
+    private final Map<String, Path> modules = new HashMap<>();
+    private final Map<Path, Model> models = new HashMap<>();
+    /**
+     * Artifacts that were needed but aren't in the local repository, as `groupId:artifactId:version`, and profiles
+     * that change the dependencies or modules when the JDK, the OS, a property or a file activates them, as
+     * `profile id of pom`
+     */
+    final Set<String> missing = new TreeSet<>();
+
+    MavenResolver(Path repository) {
+        this(List.of(mavenRepository(repository)));
+    }
+
+    MavenResolver(List<Repository> repositories) {
+        this.repositories = repositories;
+    }
+
+    /** Where artifacts are stored, like Maven's local repository or Gradle's module cache */
+    interface Repository {
+        /** The file called `name` of an artifact, or null when it isn't there */
+        Path find(String groupId, String artifactId, String version, String name);
+
+        /** Versions of an artifact that are there */
+        List<String> versions(String groupId, String artifactId);
+    }
+
+    /** ~/.m2/repository, laid out as group/id/artifactId/version/file */
+    static Repository mavenRepository(Path root) {
+        return new Repository() {
+            @Override
+            public Path find(String groupId, String artifactId, String version, String name) {
+                var file = directory(groupId, artifactId).resolve(version).resolve(name);
+                return Files.exists(file) ? file : null;
+            }
+
+            @Override
+            public List<String> versions(String groupId, String artifactId) {
+                return subdirectories(directory(groupId, artifactId));
+            }
+
+            private Path directory(String groupId, String artifactId) {
+                return root.resolve(groupId.replace('.', '/')).resolve(artifactId);
+            }
+
+            @Override
+            public String toString() {
+                return root.toString();
+            }
+        };
+    }
+
+    /** ~/.gradle/caches/modules-2/files-2.1, laid out as group.id/artifactId/version/sha1/file */
+    static Repository gradleCache(Path root) {
+        return new Repository() {
+            @Override
+            public Path find(String groupId, String artifactId, String version, String name) {
+                var dir = root.resolve(groupId).resolve(artifactId).resolve(version);
+                for (var hash : subdirectories(dir)) {
+                    var file = dir.resolve(hash).resolve(name);
+                    if (Files.exists(file)) return file;
+                }
+                return null;
+            }
+
+            @Override
+            public List<String> versions(String groupId, String artifactId) {
+                return subdirectories(root.resolve(groupId).resolve(artifactId));
+            }
+
+            @Override
+            public String toString() {
+                return root.toString();
+            }
+        };
+    }
+
+    private static List<String> subdirectories(Path dir) {
+        var result = new ArrayList<String>();
+        if (!Files.isDirectory(dir)) return result;
+        try (var list = Files.list(dir)) {
+            for (var child : (Iterable<Path>) list::iterator) {
+                if (Files.isDirectory(child)) result.add(child.getFileName().toString());
+            }
+        } catch (IOException e) {
+            LOG.warning("Failed to list " + dir + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static class Dependency {
+        String groupId, artifactId, version, scope, type, classifier, systemPath;
+        boolean optional;
+        /** `groupId:artifactId` of the excluded artifacts, either can be `*` */
+        final List<String> exclusions = new ArrayList<>();
+
+        /** Maven tells dependencies apart by this, not by the version */
+        String key() {
+            return groupId + ":" + artifactId + ":" + type + ":" + Objects.toString(classifier, "");
+        }
+
+        boolean excludes(String groupId, String artifactId) {
+            for (var e : exclusions) {
+                var parts = e.split(":");
+                var group = parts[0].equals("*") || parts[0].equals(groupId);
+                var artifact = parts.length < 2 || parts[1].equals("*") || parts[1].equals(artifactId);
+                if (group && artifact) return true;
+            }
+            return false;
+        }
+    }
+
+    /** A pom with its parents merged in. Values are kept as written, and interpolated when they are used */
+    private static class Model {
+        Path file;
+        String groupId, artifactId, version, packaging;
+        final Map<String, String> properties = new HashMap<>();
+        final Map<String, Dependency> dependencies = new LinkedHashMap<>();
+        final Map<String, Dependency> managed = new LinkedHashMap<>();
+        final List<String> modules = new ArrayList<>();
+
+        String coordinates() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    /** The jars the dependencies of `pomXml` and its modules resolve to, test scope included */
+    Set<Path> classPath(Path pomXml) {
+        return resolve(pomXml, false);
+    }
+
+    /** The source jars of the dependencies of `pomXml` and its modules that are in the local repository */
+    Set<Path> sourcePath(Path pomXml) {
+        return resolve(pomXml, true);
+    }
+
+    private Set<Path> resolve(Path pomXml, boolean sources) {
+        var projects = new ArrayList<Model>();
+        addModules(pomXml.toAbsolutePath().normalize(), projects);
+        return resolve(projects, sources);
+    }
+
+    /**
+     * The jars of `coordinates`, each `groupId:artifactId[:version[:classifier]]`, and of what they depend on at
+     * compile and run time. The version can also be a range, or a Gradle dynamic version like `1.+`.
+     */
+    Set<Path> resolve(Collection<String> coordinates, boolean sources) {
+        var project = new Model();
+        for (var c : coordinates) {
+            var parts = c.split(":");
+            if (parts.length < 2) continue;
+            var d = new Dependency();
+            d.groupId = parts[0];
+            d.artifactId = parts[1];
+            d.version = parts.length > 2 ? parts[2] : null;
+            d.classifier = parts.length > 3 ? parts[3] : null;
+            d.type = "jar";
+            project.dependencies.put(d.key(), d);
+        }
+        return resolve(List.of(project), sources);
+    }
+
+    private Set<Path> resolve(List<Model> projects, boolean sources) {
+        var started = System.nanoTime();
+        var found = new LinkedHashSet<Path>();
+        for (var project : projects) {
+            collect(project, sources, found);
+        }
+        LOG.info(String.format("Resolved %d %s of %d projects from %s in %d ms, %d missing", found.size(),
+                sources ? "source jars" : "jars", projects.size(), repositories,
+                (System.nanoTime() - started) / 1000000, missing.size()));
+        return found;
+    }
+
+    /**
+     * The directory of every module of the reactor `pomXml`, with the directories of the modules it depends on. A
+     * dependency on a module of the reactor is one on the same groupId and artifactId, whatever version it asks for.
+     */
+    Map<Path, Set<Path>> moduleDependencies(Path pomXml) {
+        var projects = new ArrayList<Model>();
+        addModules(pomXml.toAbsolutePath().normalize(), projects);
+        var byArtifact = new HashMap<String, Path>();
+        for (var project : projects) {
+            byArtifact.put(project.groupId + ":" + project.artifactId, project.file);
+        }
+        var result = new LinkedHashMap<Path, Set<Path>>();
+        for (var project : projects) {
+            var dependsOn = new LinkedHashSet<Path>();
+            for (var d : effectiveDependencies(project, effectiveManaged(project), true)) {
+                var module = byArtifact.get(d.groupId + ":" + d.artifactId);
+                if (module != null) dependsOn.add(module.getParent());
+            }
+            result.put(project.file.getParent(), dependsOn);
+        }
+        return result;
+    }
+
+    private void addModules(Path pomXml, List<Model> projects) {
+        var model = model(pomXml);
+        if (model == null) return;
+        modules.put(model.coordinates(), pomXml);
+        projects.add(model);
+        for (var module : model.modules) {
+            var path = pomXml.getParent().resolve(module).normalize();
+            addModules(Files.isDirectory(path) ? path.resolve("pom.xml") : path, projects);
+        }
+    }
+
+    /** Walk the dependency graph breadth first, so the nearest declaration of every dependency wins */
+    private void collect(Model project, boolean sources, Set<Path> found) {
+        var managed = effectiveManaged(project);
+        var queue = new ArrayDeque<Dependency>();
+        queue.addAll(effectiveDependencies(project, managed, true));
+        var seen = new HashSet<String>();
+        while (!queue.isEmpty()) {
+            var dependency = queue.poll();
+            if (!seen.add(dependency.key())) continue;
+            var coordinates = dependency.groupId + ":" + dependency.artifactId + ":" + dependency.version;
+            var inWorkspace = modules.containsKey(coordinates);
+            var name = fileName(dependency, sources);
+            var jar = name == null ? null : find(dependency.groupId, dependency.artifactId, dependency.version, name);
+            if (dependency.systemPath != null && !sources) {
+                jar = Path.of(dependency.systemPath);
+            }
+            if (jar != null && Files.exists(jar)) {
+                found.add(jar);
+            } else if ((name != null || dependency.systemPath != null) && !sources && !inWorkspace) {
+                missing.add(coordinates);
+            }
+            if ("system".equals(dependency.scope)) continue;
+            var model = inWorkspace ? model(modules.get(coordinates)) : model(pom(dependency));
+            if (model == null) continue;
+            for (var child : effectiveDependencies(model, managed, false)) {
+                var scope = transitiveScope(dependency.scope, child.scope);
+                if (scope == null || child.optional || dependency.excludes(child.groupId, child.artifactId)) continue;
+                child.scope = scope;
+                child.exclusions.addAll(dependency.exclusions);
+                queue.add(child);
+            }
+        }
+    }
+
+    /** The scope a dependency of a dependency gets, or null when it isn't passed on */
+    private static String transitiveScope(String parent, String child) {
+        if (child.equals("test") || child.equals("provided") || child.equals("system")) return null;
+        switch (parent) {
+            case "compile":
+                return child;
+            case "runtime":
+            case "provided":
+            case "test":
+                return parent;
+            default:
+                return null;
+        }
+    }
+
+    /** Dependencies of `model` with versions and scopes filled in, the root project's management wins over its own */
+    private List<Dependency> effectiveDependencies(Model model, Map<String, Dependency> rootManaged, boolean isRoot) {
+        var own = isRoot ? rootManaged : effectiveManaged(model);
+        var result = new ArrayList<Dependency>();
+        for (var written : model.dependencies.values()) {
+            var d = interpolate(model, written);
+            for (var management : isRoot ? List.of(own) : List.of(rootManaged, own)) {
+                var m = management.get(d.key());
+                if (m == null) continue;
+                // The project that is being resolved decides the versions of everything it depends on
+                if (d.version == null || !isRoot && management == rootManaged) d.version = m.version;
+                if (d.scope == null) d.scope = m.scope;
+                if (d.exclusions.isEmpty()) d.exclusions.addAll(m.exclusions);
+            }
+            if (d.scope == null) d.scope = "compile";
+            d.version = pickVersion(d.groupId, d.artifactId, d.version);
+            if (d.version == null) {
+                missing.add(d.groupId + ":" + d.artifactId);
+                continue;
+            }
+            result.add(d);
+        }
+        return result;
+    }
+
+    /** dependencyManagement of `model`, with the BOMs it imports */
+    private Map<String, Dependency> effectiveManaged(Model model) {
+        var result = new LinkedHashMap<String, Dependency>();
+        for (var written : model.managed.values()) {
+            var d = interpolate(model, written);
+            if ("import".equals(d.scope) && "pom".equals(d.type)) {
+                var version = pickVersion(d.groupId, d.artifactId, d.version);
+                var bom = version == null ? null : model(pomOf(d.groupId, d.artifactId, version));
+                if (bom == null) {
+                    missing.add(d.groupId + ":" + d.artifactId + ":" + d.version);
+                    continue;
+                }
+                for (var imported : effectiveManaged(bom).entrySet()) {
+                    result.putIfAbsent(imported.getKey(), imported.getValue());
+                }
+            } else {
+                result.putIfAbsent(d.key(), d);
+            }
+        }
+        return result;
+    }
+
+    /** Name of the jar of `d`, or null when it has none */
+    private static String fileName(Dependency d, boolean sources) {
+        if (d.systemPath != null) return null;
+        var classifier = d.classifier;
+        switch (d.type) {
+            case "jar":
+            case "bundle":
+            case "maven-plugin":
+            case "ejb":
+                break;
+            case "test-jar":
+                classifier = "tests";
+                break;
+            default:
+                // Poms only bring their dependencies, and wars or zips are never on the class path
+                return null;
+        }
+        if (sources) {
+            classifier = "sources";
+        }
+        return d.artifactId + "-" + d.version + (classifier == null ? "" : "-" + classifier) + ".jar";
+    }
+
+    private Path find(String groupId, String artifactId, String version, String name) {
+        for (var r : repositories) {
+            var found = r.find(groupId, artifactId, version, name);
+            if (found != null) return found;
+        }
+        return null;
+    }
+
+    private Path pom(Dependency d) {
+        return pomOf(d.groupId, d.artifactId, d.version);
+    }
+
+    private Path pomOf(String groupId, String artifactId, String version) {
+        var workspace = modules.get(groupId + ":" + artifactId + ":" + version);
+        if (workspace != null) return workspace;
+        return find(groupId, artifactId, version, artifactId + "-" + version + ".pom");
+    }
+
+    /**
+     * The version `spec` asks for. A plain version is taken as it is, a range, a dynamic version or a missing version
+     * becomes the highest version in the repositories that fits, or null when there is none.
+     */
+    private String pickVersion(String groupId, String artifactId, String spec) {
+        if (spec == null || spec.isEmpty() || spec.equals("+") || spec.startsWith("latest.")) {
+            spec = "";
+        } else if (!spec.startsWith("[") && !spec.startsWith("(") && !spec.endsWith("+")) {
+            return spec;
+        }
+        String best = null;
+        for (var r : repositories) {
+            for (var version : r.versions(groupId, artifactId)) {
+                if (!fits(version, spec)) continue;
+                if (best == null || compareVersions(version, best) > 0) best = version;
+            }
+        }
+        return best;
+    }
+
+    private static boolean fits(String version, String spec) {
+        if (spec.isEmpty()) return true;
+        if (spec.endsWith("+")) return version.startsWith(spec.substring(0, spec.length() - 1));
+        return inRange(version, spec);
+    }
+
+    private static final Pattern RANGE = Pattern.compile("([\\[(])([^,\\])]*)(?:,([^\\])]*))?([\\])])");
+
+    static boolean inRange(String version, String spec) {
+        var ranges = RANGE.matcher(spec);
+        while (ranges.find()) {
+            var lower = ranges.group(2).trim();
+            var upper = ranges.group(3) == null ? lower : ranges.group(3).trim();
+            var lowest = ranges.group(1).equals("[") ? -1 : 0;
+            var highest = ranges.group(4).equals("]") ? 1 : 0;
+            var aboveLower = lower.isEmpty() || compareVersions(version, lower) > lowest;
+            var belowUpper = upper.isEmpty() || compareVersions(version, upper) < highest;
+            if (aboveLower && belowUpper) return true;
+        }
+        return false;
+    }
+
+    /** Compare versions piece by piece, numbers by value, and a release above its qualifiers like `-beta` */
+    static int compareVersions(String a, String b) {
+        var as = a.split("[.-]");
+        var bs = b.split("[.-]");
+        for (var i = 0; i < Math.max(as.length, bs.length); i++) {
+            var x = i < as.length ? as[i] : "";
+            var y = i < bs.length ? bs[i] : "";
+            var xNumber = x.matches("\\d+");
+            var yNumber = y.matches("\\d+");
+            int c;
+            if (xNumber && yNumber) {
+                c = Long.compare(Long.parseLong(x), Long.parseLong(y));
+            } else if (xNumber != yNumber) {
+                // 1.0.1 > 1.0 > 1.0-beta
+                c = xNumber ? 1 : y.isEmpty() ? -1 : x.isEmpty() ? 1 : -1;
+            } else if (x.isEmpty() != y.isEmpty()) {
+                c = x.isEmpty() ? 1 : -1;
+            } else {
+                c = x.compareToIgnoreCase(y);
+            }
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private Model model(Path pomXml) {
+        if (pomXml == null) return null;
+        var key = pomXml.toAbsolutePath().normalize();
+        if (models.containsKey(key)) return models.get(key);
+        // Parents that point back to their children must not recurse forever
+        models.put(key, null);
+        var model = read(key);
+        models.put(key, model);
+        return model;
+    }
+
+    private Model read(Path pomXml) {
+        if (!Files.exists(pomXml)) return null;
+        Element project;
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            project = factory.newDocumentBuilder().parse(pomXml.toFile()).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            LOG.warning("Failed to read " + pomXml + ": " + e.getMessage());
+            return null;
+        }
+        var model = new Model();
+        model.file = pomXml;
+        var parentElement = child(project, "parent");
+        Model parent = null;
+        if (parentElement != null) {
+            parent = parent(pomXml, parentElement);
+            if (parent != null) {
+                model.properties.putAll(parent.properties);
+                model.dependencies.putAll(parent.dependencies);
+                model.managed.putAll(parent.managed);
+            }
+        }
+        model.groupId = text(project, "groupId");
+        model.artifactId = text(project, "artifactId");
+        model.version = text(project, "version");
+        model.packaging = Objects.requireNonNullElse(text(project, "packaging"), "jar");
+        if (model.groupId == null) model.groupId = text(parentElement, "groupId");
+        if (model.version == null) model.version = text(parentElement, "version");
+        readSection(project, model);
+        readProfiles(project, model);
+        model.properties.put("project.groupId", model.groupId);
+        model.properties.put("project.artifactId", model.artifactId);
+        model.properties.put("project.version", model.version);
+        model.properties.put("project.basedir", pomXml.getParent().toString());
+        if (parentElement != null) {
+            model.properties.put("project.parent.groupId", text(parentElement, "groupId"));
+            model.properties.put("project.parent.version", text(parentElement, "version"));
+        }
+        // The version itself may be a property, like ${revision}
+        model.version = interpolate(model, model.version);
+        model.groupId = interpolate(model, model.groupId);
+        model.properties.put("project.groupId", model.groupId);
+        model.properties.put("project.version", model.version);
+        return model;
+    }
+
+    /** The properties, dependencies, dependencyManagement and modules of a project or a profile */
+    private static void readSection(Element section, Model model) {
+        for (var p : children(child(section, "properties"), null)) {
+            model.properties.put(p.getTagName(), p.getTextContent().trim());
+        }
+        for (var d : children(child(section, "dependencies"), "dependency")) {
+            var dependency = dependency(d);
+            model.dependencies.put(dependency.key(), dependency);
+        }
+        var management = child(section, "dependencyManagement");
+        for (var d : children(child(management, "dependencies"), "dependency")) {
+            var dependency = dependency(d);
+            model.managed.put(dependency.key(), dependency);
+        }
+        for (var m : children(child(section, "modules"), "module")) {
+            model.modules.add(m.getTextContent().trim());
+        }
+    }
+
+    /**
+     * Apply the profiles that are active by default. Whether the others are active depends on how Maven runs, so those
+     * that would change what is resolved are reported as missing, and the caller can ask Maven instead.
+     */
+    private void readProfiles(Element project, Model model) {
+        for (var profile : children(child(project, "profiles"), "profile")) {
+            var activation = child(profile, "activation");
+            // Profiles without an activation are only active when they are asked for with -P
+            if (activation == null) continue;
+            var conditions = children(activation, null);
+            conditions.removeIf(c -> c.getTagName().equals("activeByDefault"));
+            if (conditions.isEmpty()) {
+                if ("true".equals(text(activation, "activeByDefault"))) readSection(profile, model);
+                continue;
+            }
+            // Profiles that only set properties mostly configure plugins, they are taken to leave dependencies alone
+            for (var name : List.of("dependencies", "dependencyManagement", "modules")) {
+                if (!children(child(profile, name), null).isEmpty()) {
+                    missing.add("profile " + text(profile, "id") + " of " + model.file);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** The parent in the workspace at relativePath when it is the one asked for, or else the one in the repository */
+    private Model parent(Path pomXml, Element parent) {
+        var groupId = text(parent, "groupId");
+        var artifactId = text(parent, "artifactId");
+        var version = text(parent, "version");
+        var relativePath = Objects.requireNonNullElse(text(parent, "relativePath"), "../pom.xml");
+        if (!relativePath.isEmpty()) {
+            var path = pomXml.getParent().resolve(relativePath).normalize();
+            if (Files.isDirectory(path)) path = path.resolve("pom.xml");
+            var local = Files.exists(path) ? model(path) : null;
+            if (local != null && Objects.equals(local.artifactId, artifactId)) {
+                return local;
+            }
+        }
+        var found = model(pomOf(groupId, artifactId, version));
+        if (found == null) {
+            missing.add(groupId + ":" + artifactId + ":" + version);
+        }
+        return found;
+    }
+
+    private static Dependency dependency(Element d) {
+        var dependency = new Dependency();
+        dependency.groupId = text(d, "groupId");
+        dependency.artifactId = text(d, "artifactId");
+        dependency.version = text(d, "version");
+        dependency.scope = text(d, "scope");
+        dependency.type = Objects.requireNonNullElse(text(d, "type"), "jar");
+        dependency.classifier = text(d, "classifier");
+        dependency.systemPath = text(d, "systemPath");
+        dependency.optional = "true".equals(text(d, "optional"));
+        for (var e : children(child(d, "exclusions"), "exclusion")) {
+            var artifactId = Objects.requireNonNullElse(text(e, "artifactId"), "*");
+            dependency.exclusions.add(text(e, "groupId") + ":" + artifactId);
+        }
+        return dependency;
+    }
+
+    private Dependency interpolate(Model model, Dependency written) {
+        var d = new Dependency();
+        d.groupId = interpolate(model, written.groupId);
+        d.artifactId = interpolate(model, written.artifactId);
+        d.version = interpolate(model, written.version);
+        d.scope = interpolate(model, written.scope);
+        d.type = interpolate(model, written.type);
+        d.classifier = interpolate(model, written.classifier);
+        d.systemPath = interpolate(model, written.systemPath);
+        d.optional = written.optional;
+        d.exclusions.addAll(written.exclusions);
+        return d;
+    }
+
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+
+    /** Replace `${name}` by the properties of `model`, the system properties or the environment */
+    private static String interpolate(Model model, String value) {
+        if (value == null) return null;
+        for (var depth = 0; depth < 10 && value.contains("${"); depth++) {
+            var m = PROPERTY.matcher(value);
+            var result = new StringBuilder();
+            while (m.find()) {
+                var name = m.group(1);
+                var replacement = model.properties.get(name.startsWith("pom.") ? "project." + name.substring(4) : name);
+                if (replacement == null) replacement = System.getProperty(name);
+                if (replacement == null && name.startsWith("env.")) replacement = System.getenv(name.substring(4));
+                m.appendReplacement(result, Matcher.quoteReplacement(replacement == null ? m.group() : replacement));
+            }
+            m.appendTail(result);
+            if (result.toString().equals(value)) break;
+            value = result.toString();
+        }
+        return value;
+    }
+
+    private static Element child(Element parent, String name) {
+        if (parent == null) return null;
+        for (var n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && ((Element) n).getTagName().equals(name)) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
+    /** Child elements of `parent` called `name`, or all of them when `name` is null */
+    private static List<Element> children(Element parent, String name) {
+        var result = new ArrayList<Element>();
+        if (parent == null) return result;
+        for (var n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE && (name == null || ((Element) n).getTagName().equals(name))) {
+                result.add((Element) n);
+            }
+        }
+        return result;
+    }
+
+    private static String text(Element parent, String name) {
+        var found = child(parent, name);
+        if (found == null) return null;
+        var text = found.getTextContent().trim();
+        return text.isEmpty() ? null : text;
+    }
+}
@@ -0,0 +1,82 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * The modules of a Maven reactor or a Gradle build, and which of them depend on which. Code can only refer to a
+ * declaration when its module has the module of the declaration on its class path, so a search for references only
+ * needs to look at the modules that depend on the one that owns the declaration.
+ */
+class ModuleGraph {
+    private static final Logger LOG = Logger.getLogger("main");
+
+    /** A workspace that isn't split in modules, where every file can refer to every other one */
+    static final ModuleGraph NONE = new ModuleGraph(Map.of());
+
+    /** Directory of every module, a file belongs to the innermost one it is in */
+    private final Set<Path> modules = new HashSet<>();
+    /** The modules that depend on a module, directly or through other modules, itself included */
+    private final Map<Path, Set<Path>> dependents = new HashMap<>();
+
+    /** `dependencies` maps the directory of every module to the directories of the modules it depends on */
+    ModuleGraph(Map<Path, Set<Path>> dependencies) {
+        var direct = new HashMap<Path, Set<Path>>();
+        for (var e : dependencies.entrySet()) {
+            var module = normalize(e.getKey());
+            modules.add(module);
+            for (var dependency : e.getValue()) {
+                direct.computeIfAbsent(normalize(dependency), k -> new HashSet<>()).add(module);
+            }
+        }
+        for (var module : modules) {
+            var reached = new HashSet<Path>();
+            var todo = new ArrayDeque<Path>();
+            todo.add(module);
+            while (!todo.isEmpty()) {
+                var next = todo.poll();
+                if (reached.add(next)) {
+                    todo.addAll(direct.getOrDefault(next, Set.of()));
+                }
+            }
+            dependents.put(module, reached);
+        }
+        if (!modules.isEmpty()) {
+            LOG.info(String.format("Found %d modules", modules.size()));
+        }
+    }
+
+    private static Path normalize(Path dir) {
+        return dir.toAbsolutePath().normalize();
+    }
+
+    int size() {
+        return modules.size();
+    }
+
+    /** Directory of the module `file` belongs to, or null when it is outside of every module */
+    Path moduleOf(Path file) {
+        if (modules.isEmpty()) return null;
+        for (var dir = normalize(file).getParent(); dir != null; dir = dir.getParent()) {
+            if (modules.contains(dir)) return dir;
+        }
+        return null;
+    }
+
+    /** Files that can refer to what `declaration` declares: the files of its module, and of the modules that use it */
+    Predicate<Path> canRefer(Path declaration) {
+        var owner = moduleOf(declaration);
+        if (owner == null) return f -> true;
+        var visible = dependents.get(owner);
+        return f -> {
+            var module = moduleOf(f);
+            return module == null || visible.contains(module);
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package org.javacs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds which of a set of words occur in a text as whole words, in one pass over the text. It is an Aho-Corasick
+ * automaton over the UTF-8 bytes of the words, with the failure links folded into a complete transition table, so
+ * every byte of the text costs one table lookup. Word boundaries are the same as {@link StringSearch#nextWord}.
+ */
+class MultiWordSearch {
+    private final String[] words;
+    private final int[] lengths;
+    /** next[state * 256 + b] is the state after reading byte b in state */
+    private final int[] next;
+    /** The words that end in every state, through failure links too, as indexes into {@link #words} */
+    private final int[][] matches;
+
+    /** Empty words are never found */
+    MultiWordSearch(Collection<String> words) {
+        var unique = new LinkedHashSet<String>();
+        for (var w : words) {
+            if (!w.isEmpty()) unique.add(w);
+        }
+        this.words = unique.toArray(String[]::new);
+        this.lengths = new int[this.words.length];
+
+        // Build the trie, with -1 for missing transitions
+        var trie = new ArrayList<int[]>();
+        var ends = new ArrayList<List<Integer>>();
+        trie.add(newState());
+        ends.add(new ArrayList<>());
+        for (var i = 0; i < this.words.length; i++) {
+            var bytes = this.words[i].getBytes(StandardCharsets.UTF_8);
+            lengths[i] = bytes.length;
+            var state = 0;
+            for (var b : bytes) {
+                var edges = trie.get(state);
+                if (edges[b & 0xff] == -1) {
+                    edges[b & 0xff] = trie.size();
+                    trie.add(newState());
+                    ends.add(new ArrayList<>());
+                }
+                state = edges[b & 0xff];
+            }
+            ends.get(state).add(i);
+        }
+
+        // Breadth first, so the failure state of every state is complete before its children need it
+        var states = trie.size();
+        next = new int[states * 256];
+        matches = new int[states][];
+        var fail = new int[states];
+        var queue = new ArrayDeque<Integer>();
+        for (var b = 0; b < 256; b++) {
+            var child = trie.get(0)[b];
+            next[b] = child == -1 ? 0 : child;
+            if (child != -1) {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        matches[0] = new int[0];
+        while (!queue.isEmpty()) {
+            var state = queue.poll();
+            var found = new ArrayList<>(ends.get(state));
+            for (var m : matches[fail[state]]) {
+                found.add(m);
+            }
+            matches[state] = found.stream().mapToInt(Integer::intValue).toArray();
+            for (var b = 0; b < 256; b++) {
+                var child = trie.get(state)[b];
+                var fallback = next[fail[state] * 256 + b];
+                if (child == -1) {
+                    next[state * 256 + b] = fallback;
+                } else {
+                    next[state * 256 + b] = child;
+                    fail[child] = fallback;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    /** The words to find, without duplicates and empty words */
+    List<String> words() {
+        return List.of(words);
+    }
+
+    private static int[] newState() {
+        var edges = new int[256];
+        Arrays.fill(edges, -1);
+        return edges;
+    }
+
+    Set<String> find(String text) {
+        return find(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** The words that occur in `text` as whole words, in the order they were given */
+    Set<String> find(ByteBuffer text) {
+        var found = new boolean[words.length];
+        var remaining = words.length;
+        var state = 0;
+        var limit = text.limit();
+        for (var i = 0; i < limit && remaining > 0; i++) {
+            state = next[state * 256 + (text.get(i) & 0xff)];
+            for (var m : matches[state]) {
+                if (found[m]) continue;
+                var start = i - lengths[m] + 1;
+                var startsWord = start == 0 || !StringSearch.isWordChar(text.get(start - 1));
+                var endsWord = i + 1 == limit || !StringSearch.isWordChar(text.get(i + 1));
+                if (startsWord && endsWord) {
+                    found[m] = true;
+                    remaining--;
+                }
+            }
+        }
+        var result = new LinkedHashSet<String>();
+        for (var i = 0; i < words.length; i++) {
+            if (found[i]) result.add(words[i]);
+        }
+        return result;
+    }
+}
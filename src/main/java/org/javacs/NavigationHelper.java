@@ -7,8 +7,6 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.Modifier;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 
 class NavigationHelper {
 
@@ -61,33 +59,6 @@ class NavigationHelper {
         throw new RuntimeException("file not found");
     }
 
-    public static List<String> findTypeImplementations(CompilerProvider compiler, String className) {
-        var files = compiler.findTypeReferences(className);
-        if (files.length == 0) return List.of();
-        try (var task = compiler.compile(files)) {
-            return findImplementations(task, className);
-        }
-    }
-
-    public static void findTypeAllImplementations(CompilerProvider compiler, String className, List<String> inherits) {
-        var inheritClasses = findTypeImplementations(compiler, className);
-        for (var c : inheritClasses) {
-            if (inherits.contains(c)) {
-                continue;
-            }
-            inherits.add(c);
-            findTypeAllImplementations(compiler, c, inherits);
-        }
-    }
-
-    private static List<String> findImplementations(CompileTask task, String className) {
-        var inheritTypes = new ArrayList<String>();
-        for (var root : task.roots) {
-            new FindInheritTypes(className).scan(root, inheritTypes);
-        }
-        return inheritTypes;
-    }
-
     static boolean isLocal(Element element) {
         if (element.getModifiers().contains(Modifier.PRIVATE)) {
             return true;
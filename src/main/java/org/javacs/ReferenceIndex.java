@@ -0,0 +1,296 @@
+package org.javacs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * On-disk index from a member, keyed like `pkg.Class::member`, to the locations that reference it. Entries are kept
+ * per file, and a file is only trusted while its modified time or content hash matches the one it was indexed with.
+ * Stale files are compiled and re-indexed the first time a lookup needs them.
+ */
+class ReferenceIndex {
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "references.json";
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Logger LOG = Logger.getLogger("main");
+
+    private static class FileEntry {
+        long modified;
+        String hash;
+        Map<String, List<Reference>> references = new HashMap<>();
+    }
+
+    private static class Reference {
+        /** Erased parameter types of the referenced method, empty for fields */
+        String signature;
+        Range range;
+    }
+
+    private static class Stored {
+        int version;
+        /** The commit the workspace was at when the index was saved, null if it isn't known */
+        String commit;
+        Map<String, FileEntry> files;
+    }
+
+    private final Path indexFile;
+    private final Map<Path, FileEntry> files = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    /** The commit the loaded index was saved at */
+    private String commit;
+    /**
+     * Set while the index is up to date from a diff against the commit it was saved at, so entries are no longer
+     * checked one by one
+     */
+    private volatile boolean trusted;
+
+    private ReferenceIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    static ReferenceIndex load(Path indexDir) {
+        var index = new ReferenceIndex(indexDir.resolve(FILE_NAME));
+        if (!Files.exists(index.indexFile)) {
+            return index;
+        }
+        try (var reader = Files.newBufferedReader(index.indexFile)) {
+            var stored = GSON.fromJson(reader, Stored.class);
+            if (stored == null || stored.version != VERSION || stored.files == null) {
+                LOG.info("Ignore outdated reference index " + index.indexFile);
+                return index;
+            }
+            index.commit = stored.commit;
+            for (var entry : stored.files.entrySet()) {
+                index.files.put(Paths.get(entry.getKey()), entry.getValue());
+            }
+            LOG.info(String.format("Loaded reference index of %d files from %s", index.files.size(), index.indexFile));
+        } catch (IOException | JsonParseException e) {
+            LOG.warning("Failed to read reference index " + index.indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /** Save the index, remembering that the workspace is at `commit`, which may be null if it isn't known */
+    synchronized void save(String commit) {
+        if (!dirty && Objects.equals(commit, this.commit)) {
+            return;
+        }
+        var stored = new Stored();
+        stored.version = VERSION;
+        stored.commit = commit;
+        stored.files = new HashMap<>();
+        for (var entry : files.entrySet()) {
+            // Files that were removed from the workspace are dropped for good
+            if (FileStore.contains(entry.getKey())) {
+                stored.files.put(entry.getKey().toString(), entry.getValue());
+            }
+        }
+        try {
+            Files.createDirectories(indexFile.getParent());
+            var tmp = indexFile.resolveSibling(FILE_NAME + ".tmp");
+            try (var writer = Files.newBufferedWriter(tmp)) {
+                GSON.toJson(stored, writer);
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            this.commit = commit;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Re-index the `touched` files and forget the `deleted` ones. When the index was saved at `baseCommit`, the commit
+     * the diff starts from, every other entry is trusted as it is until {@link #endRequest}, because stat and hash
+     * checks would only repeat what the diff already says. An index saved at any other commit, or a diff whose base
+     * isn't known, keeps checking every entry.
+     */
+    void update(JavaCompilerService compiler, Collection<Path> touched, Collection<Path> deleted, String baseCommit) {
+        for (var file : deleted) {
+            if (files.remove(file.normalize()) != null) {
+                dirty = true;
+            }
+        }
+        var existing = new ArrayList<Path>();
+        for (var file : touched) {
+            if (FileStore.contains(file.normalize())) {
+                existing.add(file.normalize());
+            } else {
+                files.remove(file.normalize());
+            }
+        }
+        LOG.info(String.format("Update reference index with %d changed and %d deleted files", existing.size(),
+                deleted.size()));
+        if (!existing.isEmpty()) {
+            try (var task = compiler.compile(existing.toArray(Path[]::new))) {
+                for (var root : task.roots) {
+                    index(task, root, Paths.get(root.getSourceFile().toUri()));
+                }
+            }
+        }
+        trusted = baseCommit != null && baseCommit.equals(commit);
+        if (!trusted) {
+            LOG.info(String.format("Reference index was saved at %s, not at %s, check every file", commit, baseCommit));
+        }
+    }
+
+    /** Check every entry again, the next request may come from another checkout */
+    void endRequest() {
+        trusted = false;
+    }
+
+    boolean isTrusted() {
+        return trusted;
+    }
+
+    /** Key of a member, the same as the one `JavaFindReference.getMethodLevelElement` returns */
+    static String symbol(Element member) {
+        var parentClass = (TypeElement) member.getEnclosingElement();
+        var memberName = member.getSimpleName().toString();
+        if (memberName.equals("<init>")) {
+            memberName = parentClass.getSimpleName().toString();
+        }
+        return parentClass.getQualifiedName() + "::" + memberName;
+    }
+
+    /** Tells overloads of the same symbol apart */
+    static String signature(Types types, Element member) {
+        if (member.getKind() != ElementKind.METHOD && member.getKind() != ElementKind.CONSTRUCTOR) {
+            return "";
+        }
+        var params = new ArrayList<String>();
+        for (var p : ((ExecutableElement) member).getParameters()) {
+            params.add(types.erasure(p.asType()).toString());
+        }
+        return "(" + String.join(",", params) + ")";
+    }
+
+    /**
+     * Find the references to `symbol` in the candidate `files`. Files that are up to date are answered from the index,
+     * the rest are compiled in one batch and indexed again.
+     */
+    List<Location> findReferences(JavaCompilerService compiler, Path[] candidates, String symbol, String signature) {
+        var byFile = new LinkedHashMap<Path, List<Location>>();
+        var stale = new ArrayList<Path>();
+        for (var file : candidates) {
+            if (isFresh(file)) {
+                byFile.put(file, lookup(file, symbol, signature));
+            } else {
+                byFile.put(file, null);
+                stale.add(file);
+            }
+        }
+        if (!stale.isEmpty()) {
+            LOG.fine(String.format("Index %d of %d candidate files for %s", stale.size(), candidates.length, symbol));
+            try (var task = compiler.compile(stale.toArray(Path[]::new))) {
+                for (var root : task.roots) {
+                    var file = Paths.get(root.getSourceFile().toUri());
+                    index(task, root, file);
+                    byFile.put(file, lookup(file, symbol, signature));
+                }
+            }
+        }
+        var locations = new ArrayList<Location>();
+        for (var found : byFile.values()) {
+            if (found != null) {
+                locations.addAll(found);
+            }
+        }
+        return locations;
+    }
+
+    private boolean isFresh(Path file) {
+        var entry = files.get(file);
+        if (entry == null || !FileStore.contains(file)) {
+            return false;
+        }
+        if (trusted) {
+            return true;
+        }
+        var modified = FileStore.modified(file).toEpochMilli();
+        if (entry.modified == modified) {
+            return true;
+        }
+        // Checkouts and builds touch files without changing them, so fall back to the content
+        if (entry.hash.equals(hash(file))) {
+            entry.modified = modified;
+            dirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    private List<Location> lookup(Path file, String symbol, String signature) {
+        var entry = files.get(file);
+        var found = entry.references.getOrDefault(symbol, List.of());
+        var locations = new ArrayList<Location>();
+        for (var r : found) {
+            if (r.signature.equals(signature)) {
+                locations.add(new Location(file.toUri(), r.range));
+            }
+        }
+        return locations;
+    }
+
+    private void index(CompileTask task, CompilationUnitTree root, Path file) {
+        var entry = new FileEntry();
+        entry.modified = FileStore.modified(file).toEpochMilli();
+        entry.hash = hash(file);
+        var paths = new HashMap<Element, List<TreePath>>();
+        new IndexReferences(task.task).scan(root, paths);
+        var types = task.task.getTypes();
+        for (var found : paths.entrySet()) {
+            var symbol = symbol(found.getKey());
+            var signature = signature(types, found.getKey());
+            var references = entry.references.computeIfAbsent(symbol, k -> new ArrayList<>());
+            for (var p : found.getValue()) {
+                var reference = new Reference();
+                reference.signature = signature;
+                reference.range = FindHelper.location(task, p).range;
+                references.add(reference);
+            }
+        }
+        files.put(file, entry);
+        dirty = true;
+    }
+
+    private static String hash(Path file) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            var bytes = digest.digest(FileStore.contents(file).getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (var b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.sun.source.util.TreePath;
 import javax.lang.model.element.TypeElement;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +34,7 @@ public class ReferenceProvider {
                 var type = (TypeElement) element;
                 var className = type.getQualifiedName().toString();
                 task.close();
-                return NavigationHelper.findTypeImplementations(findReference.compiler(), className);
+                return TypeHierarchy.subtypes(className);
             }
             return List.of();
         }
@@ -66,9 +67,10 @@ public class ReferenceProvider {
                 if (memberName.equals("<init>")) {
                     memberName = parentClass.getSimpleName().toString();
                 }
+                var signature = ReferenceIndex.signature(task.task.getTypes(), element);
                 task.close();
                 LOG.fine("Find member references for: " + className + "::" + memberName);
-                return findMemberReferences(className, memberName);
+                return findMemberReferences(className, memberName, signature);
             }
             return NOT_SUPPORTED;
         }
@@ -77,11 +79,12 @@ public class ReferenceProvider {
     private List<Location> findDefaultConstructorReferences(String className) {
         var implementations = new ArrayList<String>();
         implementations.add(className);
-        NavigationHelper.findTypeAllImplementations(findReference.compiler(), className, implementations);
+        implementations.addAll(TypeHierarchy.allSubtypes(className));
 
+        var typeReferences = findReference.compiler().findTypeReferences(implementations);
         var locations = new ArrayList<Location>();
         for (var implementation : implementations ) {
-            var files = findReference.compiler().findTypeReferences(implementation);
+            var files = typeReferences.get(implementation);
             if(files.length > 0) {
                 try (var task = findReference.compiler().compile(files)) {
                     var paths = new ArrayList<TreePath>();
@@ -114,26 +117,33 @@ public class ReferenceProvider {
     private List<Location> findTypeReferences(String className) {
         var files = findReference.compiler().findTypeReferences(className);
         if (files.length == 0) return List.of();
-        try (var task = findReference.compiler().compile(files)) {
+        // Imports name the package too, but only the simple name has to appear in the classes that use the type
+        var simpleName = className.substring(className.lastIndexOf('.') + 1);
+        try (var task = findReference.compiler().compileMentioning(simpleName, files)) {
             return findReferences(task);
         }
     }
 
-    private List<Location> findMemberReferences(String className, String memberName) {
+    private List<Location> findMemberReferences(String className, String memberName, String signature) {
         var specialCompiler = findReference.compiler(memberName);
         if (specialCompiler.isPresent()) {
-            if (!cachedTask.containsKey(memberName)) {
-                var files = specialCompiler.get().findMemberReferences(className, memberName);
-                if (files.length == 0)
-                    return List.of();
-                if(files.length > 50) {
-                    LOG.info("Find candidate " + files.length + " files " + memberName);
-                }
+            // The cached tasks are never closed, so only one thread may compile or scan them at a time
+            synchronized (cachedTask) {
+                if (!cachedTask.containsKey(memberName)) {
+                    // The task is shared by every class with a member of this name, so it can't be narrowed down to
+                    // the files that see one of them
+                    var files = specialCompiler.get().findMemberReferences(memberName);
+                    if (files.length == 0)
+                        return List.of();
+                    if(files.length > 50) {
+                        LOG.info("Find candidate " + files.length + " files " + memberName);
+                    }
 
-                var task = specialCompiler.get().compile(files);
-                cachedTask.put(memberName, task);
+                    var task = specialCompiler.get().compileMentioning(memberName, files);
+                    cachedTask.put(memberName, task);
+                }
+                return findReferences(cachedTask.get(memberName));
             }
-            return findReferences(cachedTask.get(memberName));
         } else {
             var files = findReference.compiler().findMemberReferences(className, memberName);
             if (files.length == 0)
@@ -141,13 +151,55 @@ public class ReferenceProvider {
             if(files.length > 50) {
                 LOG.info("Find candidate " + files.length + " files for member " + memberName);
             }
+            // Members of anonymous classes have no qualified name to look them up by
+            var index = findReference.index();
+            if (index.isPresent() && !className.isEmpty()) {
+                return index.get().findReferences(findReference.compiler(), files, className + "::" + memberName,
+                        signature);
+            }
 
-            try (var task = findReference.compiler().compile(files)) {
+            try (var task = findReference.compiler().compileMentioning(memberName, files)) {
                 return findReferences(task);
             }
         }
     }
 
+    /**
+     * Drop the cached tasks of special methods that compiled one of the `changed` files, or that would compile it now
+     * because it mentions the method.
+     */
+    static void forgetChanged(Collection<Path> changed) {
+        if (changed.isEmpty()) return;
+        synchronized (cachedTask) {
+            var it = cachedTask.entrySet().iterator();
+            while (it.hasNext()) {
+                var e = it.next();
+                if (compiles(e.getValue(), changed) || mentions(changed, e.getKey())) {
+                    LOG.info("Forget the compiled references to " + e.getKey());
+                    e.getValue().close();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static boolean compiles(CompileTask task, Collection<Path> files) {
+        for (var root : task.roots) {
+            var uri = root.getSourceFile().toUri();
+            for (var f : files) {
+                if (f.toUri().equals(uri)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mentions(Collection<Path> files, String word) {
+        for (var f : files) {
+            if (FileStore.contains(f) && WordIndex.containsWord(f, word)) return true;
+        }
+        return false;
+    }
+
     private List<Location> findReferences(CompileTask task) {
         var element = NavigationHelper.findElementMethodLevel(task, file, line, column);
         var paths = new ArrayList<TreePath>();
@@ -0,0 +1,243 @@
+package org.javacs;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks the reference graph outwards from a set of positions on a bounded pool of worker threads. The references of
+ * every method are looked up at most once and kept, however many positions inside it are reached, so several searches
+ * can share one exploration of the graph. Every position without any references is a leaf.
+ */
+class ReferenceWalker implements AutoCloseable {
+    private final JavaFindReference finder;
+    private final ExecutorService pool;
+    /** The explored part of the graph, an empty list marks a leaf */
+    private final Map<FilePosition, List<FilePosition>> references = new ConcurrentHashMap<>();
+    /** The largest depth each position was explored with */
+    private final Map<FilePosition, Integer> explored = new ConcurrentHashMap<>();
+    /** The method or field around every position that was looked up */
+    private final Map<FilePosition, JavaFindReference.Owner> owners = new ConcurrentHashMap<>();
+    /** The references of every method or field by its symbol, shared by all the positions inside it */
+    private final Map<String, CompletableFuture<List<FilePosition>>> bySymbol = new ConcurrentHashMap<>();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    /** Number of submitted tasks that have not finished yet */
+    private int pending;
+
+    ReferenceWalker(JavaFindReference finder, int threads) {
+        this.finder = finder;
+        var count = new AtomicInteger();
+        this.pool =
+                Executors.newFixedThreadPool(
+                        Math.max(1, threads),
+                        work -> {
+                            var thread = new Thread(work, "find-reference-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /** Find the leaves reachable from `starts`, following at most `depth` levels of references (-1 for no limit) */
+    Set<FilePosition> walk(Collection<FilePosition> starts, int depth) {
+        explore(starts, depth);
+        var leaves = new HashSet<FilePosition>();
+        for (var start : starts) {
+            leaves.addAll(leaves(start, depth));
+        }
+        return leaves;
+    }
+
+    /** Look up the references of everything reachable from `starts` within `depth` levels */
+    void explore(Collection<FilePosition> starts, int depth) {
+        for (var start : starts) {
+            submit(() -> expand(start, depth));
+        }
+        await();
+    }
+
+    /** Find the leaves reachable from an explored `start` within `depth` levels, without looking anything up */
+    Set<FilePosition> leaves(FilePosition start, int depth) {
+        var leaves = new HashSet<FilePosition>();
+        var visited = new HashSet<FilePosition>();
+        var queue = new ArrayDeque<FilePosition>();
+        var remaining = new ArrayDeque<Integer>();
+        queue.add(start);
+        remaining.add(depth);
+        // Breadth first, so every position is reached with the most depth left
+        while (!queue.isEmpty()) {
+            var position = queue.poll();
+            var left = remaining.poll();
+            if (left == 0) {
+                continue;
+            }
+            var found = references.get(position);
+            if (found == null) {
+                throw new IllegalStateException(position.path + " has not been explored");
+            }
+            if (found.isEmpty()) {
+                leaves.add(position);
+                continue;
+            }
+            for (var next : found) {
+                if (visited.add(next)) {
+                    queue.add(next);
+                    remaining.add(left - 1);
+                }
+            }
+        }
+        return leaves;
+    }
+
+    /** Run `action` on every item in parallel and wait until all of them are done */
+    <T> void forEach(Collection<T> items, Consumer<T> action) {
+        for (var item : items) {
+            submit(() -> action.accept(item));
+        }
+        await();
+    }
+
+    private void expand(FilePosition position, int depth) {
+        if (depth == 0 || !deepen(position, depth)) {
+            return;
+        }
+        var found = references.get(position);
+        if (found == null) {
+            found = lookUp(position);
+            references.put(position, found);
+        }
+        for (var next : found) {
+            submit(() -> expand(next, depth - 1));
+        }
+    }
+
+    /** Record that `position` is explored with `depth`, unless it already was with at least as much */
+    private boolean deepen(FilePosition position, int depth) {
+        var wanted = depth < 0 ? Integer.MAX_VALUE : depth;
+        var claimed = new boolean[1];
+        explored.compute(position, (key, before) -> {
+            if (before != null && before >= wanted) {
+                return before;
+            }
+            claimed[0] = true;
+            return wanted;
+        });
+        return claimed[0];
+    }
+
+    /** The method or field around `position`, which is only resolved the first time it is asked */
+    JavaFindReference.Owner owner(FilePosition position) {
+        var owner = owners.get(position);
+        if (owner == null) {
+            owner = finder.findOwner(position);
+            owners.putIfAbsent(position, owner);
+        }
+        return owner;
+    }
+
+    private List<FilePosition> lookUp(FilePosition position) {
+        var symbol = owner(position).symbol;
+        if (symbol.isEmpty()) {
+            return findReferences(position);
+        }
+        var mine = new CompletableFuture<List<FilePosition>>();
+        var shared = bySymbol.putIfAbsent(symbol, mine);
+        if (shared != null) {
+            LOG.fine(String.format("Reuse references of %s for %s(%d:%d)", symbol, position.path.getFileName(),
+                    position.line, position.character));
+            return shared.join();
+        }
+        try {
+            var found = findReferences(position);
+            mine.complete(found);
+            return found;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private List<FilePosition> findReferences(FilePosition position) {
+        var locations = finder.findReferences(position).orElse(List.of());
+        if (locations.isEmpty()) {
+            LOG.fine(String.format("Not found reference for %s(%d:%d)", position.path.getFileName(), position.line,
+                    position.character));
+            return List.of();
+        }
+        var found = new LinkedHashSet<FilePosition>();
+        for (var l : locations) {
+            var fp = fromLocation(l);
+            if (found.add(fp)) {
+                LOG.fine(String.format("Found reference for %s(%d:%d)", fp.path.getFileName(), fp.line,
+                        fp.character));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static FilePosition fromLocation(Location location) {
+        return new FilePosition(Paths.get(location.uri), location.range.start.line + 1,
+                location.range.start.character + 1);
+    }
+
+    private void submit(Runnable work) {
+        synchronized (this) {
+            pending++;
+        }
+        pool.execute(() -> {
+            try {
+                work.run();
+            } catch (Throwable e) {
+                LOG.log(Level.WARNING, "Failed to walk references", e);
+                failures.add(e);
+            } finally {
+                finished();
+            }
+        });
+    }
+
+    private synchronized void finished() {
+        pending--;
+        if (pending == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void await() {
+        while (pending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        var failure = failures.poll();
+        if (failure != null) {
+            failures.clear();
+            throw new RuntimeException(failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static final Logger LOG = Logger.getLogger("JavaFindReference");
+}
@@ -33,11 +33,14 @@ import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.code.Flags;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.*;
 import com.sun.tools.javac.main.Arguments;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.model.JavacElements;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.DefinedBy;
 import com.sun.tools.javac.util.DefinedBy.Api;
@@ -48,7 +51,9 @@ import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -59,8 +64,9 @@ import java.util.stream.StreamSupport;
  * reused for future processing in some cases. The reuse is achieved by replacing some components (most notably
  * JavaCompiler and Log) with reusable counterparts, and by cleaning up leftovers from previous compilation.
  *
- * <p>For each combination of options, a separate task/context is created and kept, as most option values are cached
- * inside components themselves.
+ * <p>Up to a fixed number of contexts are kept, so that many tasks can run at the same time on different threads.
+ * All contexts share one combination of options; when the options change, each context is replaced the next time it
+ * is checked out, as most option values are cached inside components themselves.
  *
  * <p>When the compilation redefines sensitive classes (e.g. classes in the the java.* packages), the task/context is
  * not reused.
@@ -80,14 +86,26 @@ class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
+    /** Maximum number of contexts, which is also the maximum number of tasks that can be checked out at once */
+    private final int size;
+    /** Contexts that are not checked out, most recently returned first */
+    private final Deque<ReusableContext> idle = new ArrayDeque<>();
+    /** Number of contexts that exist, whether idle or checked out */
+    private int created;
     private List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+
+    ReusableCompiler() {
+        this(1);
+    }
+
+    ReusableCompiler(int size) {
+        this.size = Math.max(1, size);
+    }
 
     /**
      * Creates a new task as if by {@link javax.tools.JavaCompiler#getTask} and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
-     * compilation.
+     * compilation. If all contexts of the pool are checked out, waits until one of them is returned.
      *
      * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
@@ -107,50 +125,93 @@ class ReusableCompiler {
             Iterable<String> options,
             Iterable<String> classes,
             Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
         List<String> opts =
                 StreamSupport.stream(options.spliterator(), false).collect(Collectors.toCollection(ArrayList::new));
+        var context = checkOut(opts);
+        try {
+            JavacTaskImpl task =
+                    (JavacTaskImpl)
+                            systemProvider.getTask(
+                                    null, fileManager, diagnosticListener, opts, classes, compilationUnits, context);
+
+            task.addTaskListener(context);
+
+            return new Borrow(task, context);
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    private synchronized ReusableContext checkOut(List<String> opts) {
+        while (idle.isEmpty() && created >= size) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
         if (!opts.equals(currentOptions)) {
-            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", options, opts));
+            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", currentOptions, opts));
             currentOptions = opts;
-            currentContext = new ReusableContext(opts);
         }
-        JavacTaskImpl task =
-                (JavacTaskImpl)
-                        systemProvider.getTask(
-                                null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
+        var context = idle.poll();
+        if (context == null) {
+            created++;
+        }
+        // Contexts remember the options they were created with, so a context with other options can't be reused
+        if (context == null || !context.arguments.equals(opts)) {
+            context = new ReusableContext(opts);
+        }
+        return context;
+    }
 
-        task.addTaskListener(currentContext);
+    private synchronized void checkIn(ReusableContext context) {
+        idle.push(context);
+        notifyAll();
+    }
 
-        return new Borrow(task, currentContext);
+    private synchronized void discard() {
+        created--;
+        notifyAll();
     }
 
     class Borrow implements AutoCloseable {
         final JavacTask task;
+        private final ReusableContext context;
         boolean closed;
+        /** The task threw, so its context may be in a broken state */
+        boolean failed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.context = ctx;
         }
 
         @Override
         public void close() {
             if (closed) return;
-            // not returning the context to the pool if task crashes with an exception
+            closed = true;
+            // not returning the context to the pool if the task or its cleanup crashed with an exception
             // the task/context may be in a broken state
-            currentContext.clear();
+            if (failed) {
+                discard();
+                return;
+            }
             try {
+                context.clear();
                 var method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
                 method.invoke(task);
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                discard();
                 throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                discard();
+                throw e;
             }
-            checkedOut = false;
-            closed = true;
+            checkIn(context);
         }
     }
 
@@ -177,6 +238,7 @@ class ReusableCompiler {
 
             if (ht.get(Log.logKey) instanceof ReusableLog) {
                 // log already inited - not first round
+                forgetUnattributed();
                 ((ReusableLog) Log.instance(this)).clear();
                 Enter.instance(this).newRound();
                 ((ReusableJavaCompiler) ReusableJavaCompiler.instance(this)).clear();
@@ -189,6 +251,27 @@ class ReusableCompiler {
             }
         }
 
+        /**
+         * Classes still waiting in the todo queue were never attributed, because the task only asked for some of them.
+         * Their environments are dropped with the round, so a later round that needs them as a supertype could not
+         * attribute them any more. Mark them as attributed instead; nothing but their bodies was left out.
+         */
+        private void forgetUnattributed() {
+            var markAttributed =
+                    new TreeScanner() {
+                        @Override
+                        public void visitClassDef(JCTree.JCClassDecl tree) {
+                            if (tree.sym != null) {
+                                tree.sym.flags_field &= ~Flags.UNATTRIBUTED;
+                            }
+                            super.visitClassDef(tree);
+                        }
+                    };
+            for (var env : Todo.instance(this)) {
+                markAttributed.scan(env.tree);
+            }
+        }
+
         @Override
         @DefinedBy(Api.COMPILER_TREE)
         public void finished(TaskEvent e) {
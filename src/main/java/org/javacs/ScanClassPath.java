@@ -1,18 +1,30 @@
 package org.javacs;
 import org.javacs.guava.ClassPath;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 class ScanClassPath {
 
@@ -111,7 +123,79 @@ class ScanClassPath {
         "jdk.zipfs",
     };
 
+    private static final int JDK_CACHE_VERSION = 1;
+    /** Top-level classes of the running JDK, found once per process */
+    private static Set<String> jdkClasses;
+
+    /**
+     * Top-level classes of the running JDK. They only change with the JDK, so they are kept in
+     * ~/.java-find-reference, in a file named after java.home and the runtime version, and every compiler of the
+     * process shares one immutable set.
+     */
     static Set<String> jdkTopLevelClasses() {
+        return sharedJdkClasses(Paths.get(System.getProperty("user.home")).resolve(ClassPathCache.DIR_NAME));
+    }
+
+    /** The classes of the running JDK the process shares, which are read from or saved to `cacheDir` the first time */
+    static synchronized Set<String> sharedJdkClasses(Path cacheDir) {
+        if (jdkClasses == null) {
+            jdkClasses = jdkTopLevelClasses(cacheDir);
+        }
+        return jdkClasses;
+    }
+
+    /** Read the classes of the running JDK from `cacheDir`, or scan the JDK and save them there */
+    static Set<String> jdkTopLevelClasses(Path cacheDir) {
+        var file = cacheDir.resolve(jdkCacheName());
+        if (Files.exists(file)) {
+            try (var in = new BufferedReader(
+                    new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                var classes = new HashSet<String>();
+                for (var line = in.readLine(); line != null; line = in.readLine()) {
+                    classes.add(line);
+                }
+                LOG.info(String.format("Read %d classes in the java platform from %s", classes.size(), file));
+                return Collections.unmodifiableSet(classes);
+            } catch (IOException e) {
+                LOG.warning("Failed to read " + file + ": " + e.getMessage());
+            }
+        }
+        var classes = scanJdk();
+        try {
+            Files.createDirectories(cacheDir);
+            var tmp = Files.createTempFile(cacheDir, "jdk-classes", ".tmp");
+            var sorted = new ArrayList<>(classes);
+            sorted.sort(null);
+            try (var out = new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8)) {
+                for (var c : sorted) {
+                    out.write(c);
+                    out.write('\n');
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The next process scans again
+            LOG.warning("Failed to write " + file + ": " + e.getMessage());
+        }
+        return Collections.unmodifiableSet(classes);
+    }
+
+    /** Name of the file that holds the classes of the running JDK, which changes with java.home and the version */
+    private static String jdkCacheName() {
+        var key = JDK_CACHE_VERSION + "\n" + System.getProperty("java.home") + "\n" + Runtime.version();
+        try {
+            var hex = new StringBuilder();
+            for (var b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return "jdk-classes-" + hex.substring(0, 16) + ".gz";
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Set<String> scanJdk() {
         LOG.info("Searching for top-level classes in the JDK");
 
         var classes = new HashSet<String>();
@@ -36,7 +36,7 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     }
 
     private JavaFileObject asJavaFileObject(Path file) {
-        // TODO erase method bodies of files that are not open
+        // Compile batches erase the method bodies of these files once they are parsed, see EraseMethodBodies
         return new SourceFileObject(file);
     }
 
@@ -4,12 +4,14 @@ import javax.lang.model.element.TypeElement;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -105,6 +107,54 @@ public class StringSearch {
     }
 
     private int next(ByteBuffer text, int startingAfter) {
+        // Boyer-Moore skips further the longer the pattern is, and gets ahead of the filter past about 12 bytes
+        if (pattern.length < 2 || pattern.length > FILTER_MAX_LENGTH || text.order() != ByteOrder.BIG_ENDIAN) {
+            return nextBoyerMoore(text, startingAfter);
+        }
+        return nextFiltered(text, startingAfter);
+    }
+
+    private static final int FILTER_MAX_LENGTH = 12;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Look at 8 positions at a time, reading the bytes there and `pattern.length - 1` bytes further as two longs. Only
+     * the positions where both the first and the last byte of the pattern match are compared in full. This is the
+     * first/last byte filter SIMD searches use, within one register.
+     */
+    int nextFiltered(ByteBuffer text, int startingAfter) {
+        var last = pattern.length - 1;
+        var first = ONES * (pattern[0] & 0xff);
+        var end = ONES * (pattern[last] & 0xff);
+        var limit = text.limit();
+        var i = startingAfter;
+        for (; i + last + Long.BYTES <= limit; i += Long.BYTES) {
+            // Big endian, so the byte at i is the highest byte of the long
+            var x = (text.getLong(i) ^ first) | (text.getLong(i + last) ^ end);
+            // The high bit of every byte that is 0 in x, without false positives from borrows
+            var found = ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+            while (found != 0) {
+                var zeros = Long.numberOfLeadingZeros(found);
+                var at = i + (zeros >>> 3);
+                if (matchesInside(text, at)) return at;
+                found ^= 1L << (63 - zeros);
+            }
+        }
+        for (; i + last < limit; i++) {
+            if (text.get(i) == pattern[0] && text.get(i + last) == pattern[last] && matchesInside(text, i)) return i;
+        }
+        return -1;
+    }
+
+    private boolean matchesInside(ByteBuffer text, int at) {
+        for (var j = 1; j < pattern.length - 1; j++) {
+            if (text.get(at + j) != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    int nextBoyerMoore(ByteBuffer text, int startingAfter) {
         var i = startingAfter + pattern.length - 1;
         while (i < text.limit()) {
             // Compare backwards from the end until the first unmatching character.
@@ -121,9 +171,9 @@ public class StringSearch {
         return -1;
     }
 
-    private boolean isWordChar(byte b) {
-        char c = (char) (b + 128);
-        return Character.isAlphabetic(c) || Character.isDigit(c) || c == '$' || c == '_';
+    /** Bytes of non-ASCII characters are taken to be letters, Java identifiers may contain those */
+    static boolean isWordChar(byte b) {
+        return b < 0 || isWordChar((char) b);
     }
 
     private boolean startsWord(ByteBuffer text, int offset) {
@@ -198,7 +248,24 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    /** Files at least this large are mapped instead of read, so they are searched without a copy */
+    private static final int MAP_THRESHOLD = 256 * 1024;
+
+    // Every thread reads the smaller files into its own buffer, so searches can run in parallel
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAP_THRESHOLD));
+
+    /** The whole content of `channel`, valid until the next call from the same thread */
+    private static ByteBuffer contents(FileChannel channel) throws IOException {
+        var size = channel.size();
+        if (size >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        }
+        var buffer = SEARCH_BUFFER.get();
+        buffer.clear().limit((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+        return buffer.flip();
+    }
 
     // TODO cache the progress made by searching shorter queries
     static boolean containsWordMatching(Path java, String query) {
@@ -207,13 +274,7 @@ public class StringSearch {
             return matchesTitleCase(text, query);
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = StandardCharsets.UTF_8.decode(SEARCH_BUFFER);
+            var chars = StandardCharsets.UTF_8.decode(contents(channel));
             return matchesTitleCase(chars, query);
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
@@ -230,13 +291,7 @@ public class StringSearch {
             return search.nextWord(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            return search.nextWord(contents(channel)) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -245,6 +300,21 @@ public class StringSearch {
         }
     }
 
+    /** Which of the words of `search` occur in `java` as whole words, found in one pass over the file */
+    static Set<String> containsWords(Path java, MultiWordSearch search) {
+        if (FileStore.activeDocuments().contains(java)) {
+            return search.find(FileStore.contents(java));
+        }
+        try (var channel = FileChannel.open(java)) {
+            return search.find(contents(channel));
+        } catch (NoSuchFileException e) {
+            LOG.warning(e.getMessage());
+            return Set.of();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static boolean containsString(Path java, String query) {
         var search = new StringSearch(query);
         if (FileStore.activeDocuments().contains(java)) {
@@ -252,13 +322,7 @@ public class StringSearch {
             return search.next(text) != -1;
         }
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            return search.next(contents(channel)) != -1;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             return false;
@@ -332,24 +396,20 @@ public class StringSearch {
         }
     }
 
-    private static Cache<String, Boolean> cacheContainsClass = new Cache<>();
+    private static Cache<String, Boolean> cacheContainsClass =
+            new Cache<>("containsClass", Cache.DEFAULT_MAX_WEIGHT, (k, v) -> 1);
 
     private static boolean containsClass(Path file, String simpleName) {
-        if (cacheContainsClass.needs(file, simpleName)) {
-            cacheContainsClass.load(file, simpleName, containsString(file, "class " + simpleName));
-            // TODO verify this by actually parsing the file
-        }
-        return cacheContainsClass.get(file, simpleName);
+        // TODO verify this by actually parsing the file
+        return cacheContainsClass.get(file, simpleName, () -> containsString(file, "class " + simpleName));
     }
 
-    private static Cache<String, Boolean> cacheContainsInterface = new Cache<>();
+    private static Cache<String, Boolean> cacheContainsInterface =
+            new Cache<>("containsInterface", Cache.DEFAULT_MAX_WEIGHT, (k, v) -> 1);
 
     private static boolean containsInterface(Path file, String simpleName) {
-        if (cacheContainsInterface.needs(file, simpleName)) {
-            cacheContainsInterface.load(file, simpleName, containsString(file, "interface " + simpleName));
-            // TODO verify this by actually parsing the file
-        }
-        return cacheContainsInterface.get(file, simpleName);
+        // TODO verify this by actually parsing the file
+        return cacheContainsInterface.get(file, simpleName, () -> containsString(file, "interface " + simpleName));
     }
 
     // TODO this doesn't work for inner classes, eliminate
@@ -371,13 +431,14 @@ public class StringSearch {
         return parts[parts.length - 1];
     }
 
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^package +(.*);");
+    private static final Pattern START_OF_CLASS = Pattern.compile("^[\\w ]*class +\\w+");
+
     static String packageName(Path file) {
-        var packagePattern = Pattern.compile("^package +(.*);");
-        var startOfClass = Pattern.compile("^[\\w ]*class +\\w+");
         try (var lines = FileStore.lines(file)) {
             for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                if (startOfClass.matcher(line).find()) return "";
-                var matchPackage = packagePattern.matcher(line);
+                if (START_OF_CLASS.matcher(line).find()) return "";
+                var matchPackage = PACKAGE_PATTERN.matcher(line);
                 if (matchPackage.matches()) {
                     var id = matchPackage.group(1);
                     return id;
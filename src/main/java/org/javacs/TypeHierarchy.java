@@ -0,0 +1,274 @@
+package org.javacs;
+
+import com.sun.source.tree.AnnotatedTypeTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Supertypes and subtypes of every class and interface declared in the workspace, nested types included. Every file is
+ * parsed once, without attribution, the first time the index is asked; supertype names are resolved against the
+ * imports and the declared types the way javac would. Like {@link WordIndex}, it is kept up to date as FileStore
+ * learns about created, changed and deleted files.
+ */
+class TypeHierarchy {
+    /** What one file declares: its types with their supertypes as written, and the names those are resolved against */
+    private static class Declarations {
+        final String packageName;
+        final List<String> imports = new ArrayList<>();
+        /** Packages and types imported on demand, without the trailing `.*` */
+        final List<String> starImports = new ArrayList<>();
+        /** Qualified names of the declared types, nested types are joined by `.` like javac does */
+        final List<String> types = new ArrayList<>();
+        /** supertypes[i] is what types[i] extends and implements, without type arguments */
+        final List<List<String>> supertypes = new ArrayList<>();
+
+        Declarations(CompilationUnitTree root) {
+            packageName = Objects.toString(root.getPackageName(), "");
+            for (var i : root.getImports()) {
+                if (i.isStatic()) continue;
+                var name = i.getQualifiedIdentifier().toString();
+                if (name.endsWith(".*")) {
+                    starImports.add(name.substring(0, name.length() - ".*".length()));
+                } else {
+                    imports.add(name);
+                }
+            }
+            for (var t : root.getTypeDecls()) {
+                if (t instanceof ClassTree) {
+                    declare((ClassTree) t, packageName);
+                }
+            }
+        }
+
+        private void declare(ClassTree type, String outer) {
+            var name = outer.isEmpty() ? type.getSimpleName().toString() : outer + "." + type.getSimpleName();
+            var written = new ArrayList<String>();
+            if (type.getExtendsClause() != null) {
+                written.add(writtenName(type.getExtendsClause()));
+            }
+            for (var i : type.getImplementsClause()) {
+                written.add(writtenName(i));
+            }
+            types.add(name);
+            supertypes.add(written);
+            // Local and anonymous classes are skipped, they have no name to look them up by
+            for (var member : type.getMembers()) {
+                if (member instanceof ClassTree) {
+                    declare((ClassTree) member, name);
+                }
+            }
+        }
+    }
+
+    /** `a.b.Foo<T>` is written `a.b.Foo`, annotations and type arguments are dropped */
+    private static String writtenName(Tree type) {
+        if (type instanceof ParameterizedTypeTree) {
+            return writtenName(((ParameterizedTypeTree) type).getType());
+        }
+        if (type instanceof AnnotatedTypeTree) {
+            return writtenName(((AnnotatedTypeTree) type).getUnderlyingType());
+        }
+        if (type instanceof MemberSelectTree) {
+            var select = (MemberSelectTree) type;
+            return writtenName(select.getExpression()) + "." + select.getIdentifier();
+        }
+        if (type instanceof IdentifierTree) {
+            return ((IdentifierTree) type).getName().toString();
+        }
+        return type.toString();
+    }
+
+    /** Parse this many files per javac task, so the trees of the whole workspace are never in memory at once */
+    private static final int FILES_PER_PARSE = 256;
+
+    private static final Map<Path, Declarations> declarations = new HashMap<>();
+    /** Files that changed since they were parsed */
+    private static final Set<Path> dirty = new LinkedHashSet<>();
+    private static boolean built;
+    /** The resolved hierarchy, built again from {@link #declarations} after anything changes */
+    private static Map<String, Set<String>> subtypes, supertypes;
+
+    /** The types that directly extend or implement `className` */
+    static synchronized List<String> subtypes(String className) {
+        refresh();
+        return new ArrayList<>(subtypes.getOrDefault(className, Set.of()));
+    }
+
+    /** The types that extend or implement `className`, directly or through other subtypes, nearest first */
+    static synchronized List<String> allSubtypes(String className) {
+        refresh();
+        return walk(subtypes, className);
+    }
+
+    /** The types `className` directly extends or implements, as far as they can be resolved */
+    static synchronized List<String> supertypes(String className) {
+        refresh();
+        return new ArrayList<>(supertypes.getOrDefault(className, Set.of()));
+    }
+
+    /** The types `className` extends or implements, directly or through other supertypes, nearest first */
+    static synchronized List<String> allSupertypes(String className) {
+        refresh();
+        return walk(supertypes, className);
+    }
+
+    static synchronized void changed(Path file) {
+        if (built) {
+            dirty.add(file);
+            subtypes = supertypes = null;
+        }
+    }
+
+    static synchronized void removed(Path file) {
+        if (built) {
+            dirty.remove(file);
+            declarations.remove(file);
+            subtypes = supertypes = null;
+        }
+    }
+
+    /** Drop everything, the index is built again on the next lookup */
+    static synchronized void clear() {
+        declarations.clear();
+        dirty.clear();
+        built = false;
+        subtypes = supertypes = null;
+    }
+
+    private static List<String> walk(Map<String, Set<String>> edges, String start) {
+        var found = new LinkedHashSet<String>();
+        var queue = new ArrayDeque<String>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            for (var next : edges.getOrDefault(queue.poll(), Set.of())) {
+                if (!next.equals(start) && found.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static void refresh() {
+        if (!built) {
+            var started = System.nanoTime();
+            parse(new ArrayList<>(FileStore.all()));
+            built = true;
+            LOG.info(String.format("Indexed types of %d files in %d ms", declarations.size(),
+                    (System.nanoTime() - started) / 1000000));
+        }
+        if (!dirty.isEmpty()) {
+            var changed = new ArrayList<Path>();
+            for (var file : dirty) {
+                declarations.remove(file);
+                if (FileStore.contains(file)) {
+                    changed.add(file);
+                }
+            }
+            dirty.clear();
+            parse(changed);
+        }
+        if (subtypes == null) {
+            resolve();
+        }
+    }
+
+    private static void parse(List<Path> files) {
+        for (var i = 0; i < files.size(); i += FILES_PER_PARSE) {
+            var batch = files.subList(i, Math.min(files.size(), i + FILES_PER_PARSE));
+            for (var root : Parser.parseFiles(batch)) {
+                declarations.put(Paths.get(root.getSourceFile().toUri()), new Declarations(root));
+            }
+        }
+    }
+
+    private static void resolve() {
+        var declared = new HashSet<String>();
+        for (var file : declarations.values()) {
+            declared.addAll(file.types);
+        }
+        subtypes = new HashMap<>();
+        supertypes = new HashMap<>();
+        for (var file : declarations.values()) {
+            for (var i = 0; i < file.types.size(); i++) {
+                var type = file.types.get(i);
+                for (var written : file.supertypes.get(i)) {
+                    for (var supertype : resolve(file, type, written, declared)) {
+                        subtypes.computeIfAbsent(supertype, k -> new TreeSet<>()).add(type);
+                        supertypes.computeIfAbsent(type, k -> new TreeSet<>()).add(supertype);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The qualified names `written` in the header of `type` can refer to. When the name isn't declared in the
+     * workspace, it could come from any package imported on demand, and all of them are returned.
+     */
+    private static List<String> resolve(Declarations file, String type, String written, Set<String> declared) {
+        var dot = written.indexOf('.');
+        var first = dot == -1 ? written : written.substring(0, dot);
+        var rest = dot == -1 ? "" : written.substring(dot);
+        var found = resolveSimpleName(file, type, first, declared);
+        if (found != null) {
+            return List.of(found + rest);
+        }
+        // A qualified name that doesn't start with a known type is a package name
+        if (dot != -1) {
+            return List.of(written);
+        }
+        var guesses = new ArrayList<String>();
+        guesses.add(qualify(file.packageName, written));
+        for (var star : file.starImports) {
+            guesses.add(star + "." + written);
+        }
+        guesses.add("java.lang." + written);
+        return guesses;
+    }
+
+    /** Look up `name` in the enclosing types, the imports, the package and the imports on demand, in that order */
+    private static String resolveSimpleName(Declarations file, String type, String name, Set<String> declared) {
+        var outer = type;
+        while (!outer.isEmpty() && !outer.equals(file.packageName)) {
+            var member = outer + "." + name;
+            if (declared.contains(member)) return member;
+            var dot = outer.lastIndexOf('.');
+            outer = dot == -1 ? "" : outer.substring(0, dot);
+        }
+        for (var i : file.imports) {
+            if (i.equals(name) || i.endsWith("." + name)) return i;
+        }
+        var samePackage = qualify(file.packageName, name);
+        if (declared.contains(samePackage)) return samePackage;
+        for (var star : file.starImports) {
+            var imported = star + "." + name;
+            if (declared.contains(imported)) return imported;
+        }
+        return null;
+    }
+
+    private static String qualify(String packageName, String name) {
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
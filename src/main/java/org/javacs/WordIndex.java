@@ -0,0 +1,267 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Inverted index from every identifier in the workspace to the files it occurs in. It is built in one pass over
+ * {@link FileStore} the first time it is asked, and kept up to date as FileStore learns about created, changed and
+ * deleted files.
+ */
+class WordIndex {
+    /** Sorted ids of the files that contain one identifier */
+    private static class Postings {
+        /** One shared instance of the identifier for all the files that contain it */
+        final String word;
+        int[] ids = new int[2];
+        int size;
+
+        Postings(String word) {
+            this.word = word;
+        }
+
+        void add(int id) {
+            var at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return;
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            var at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private static final Map<String, Postings> postings = new HashMap<>();
+    private static final Map<Path, Integer> ids = new HashMap<>();
+    private static final List<Path> files = new ArrayList<>();
+    /** The identifiers of every file by id, so a file can be taken out of its postings again */
+    private static final List<String[]> words = new ArrayList<>();
+    /** Files that changed since they were indexed */
+    private static final Set<Path> dirty = new LinkedHashSet<>();
+    private static boolean built;
+
+    /** Files that may contain `word` as a whole word, in the same order as {@link FileStore#all()} */
+    static synchronized List<Path> candidates(String word) {
+        refresh();
+        var parts = parts(word);
+        if (parts.length == 0) {
+            return new ArrayList<>(FileStore.all());
+        }
+        Postings smallest = null;
+        for (var part : parts) {
+            var found = postings.get(part);
+            if (found == null) return List.of();
+            if (smallest == null || found.size < smallest.size) smallest = found;
+        }
+        var result = new ArrayList<Path>();
+        for (var i = 0; i < smallest.size; i++) {
+            var id = smallest.ids[i];
+            if (containsAll(id, parts)) {
+                result.add(files.get(id));
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Whether `file` contains `word` as a whole word. Identifiers are answered by the index alone, anything longer is
+     * checked against the text once the index says all of its identifiers are there.
+     */
+    static boolean containsWord(Path file, String word) {
+        var parts = parts(word);
+        synchronized (WordIndex.class) {
+            refresh();
+            var id = ids.get(file);
+            if (id == null) {
+                return StringSearch.containsWord(file, word);
+            }
+            if (!containsAll(id, parts)) {
+                return false;
+            }
+        }
+        if (parts.length == 1 && parts[0].equals(word)) {
+            return true;
+        }
+        return StringSearch.containsWord(file, word);
+    }
+
+    /**
+     * Which of the words of `search` `file` contains as whole words. Like {@link #containsWord}, identifiers are
+     * answered by the index, and the words it can't answer are all looked for in one pass over the text. Build
+     * `search` once for all the files that are asked about the same words.
+     */
+    static Set<String> containedWords(Path file, MultiWordSearch search) {
+        var found = new LinkedHashSet<String>();
+        var unsure = new HashSet<String>();
+        synchronized (WordIndex.class) {
+            refresh();
+            var id = ids.get(file);
+            for (var word : search.words()) {
+                var parts = parts(word);
+                if (id == null || containsAll(id, parts) && !(parts.length == 1 && parts[0].equals(word))) {
+                    unsure.add(word);
+                } else if (containsAll(id, parts)) {
+                    found.add(word);
+                }
+            }
+        }
+        if (!unsure.isEmpty()) {
+            for (var word : StringSearch.containsWords(file, search)) {
+                if (unsure.contains(word)) found.add(word);
+            }
+        }
+        return found;
+    }
+
+    static synchronized void changed(Path file) {
+        if (built) {
+            dirty.add(file);
+        }
+    }
+
+    static synchronized void removed(Path file) {
+        if (built) {
+            dirty.remove(file);
+            forget(file);
+        }
+    }
+
+    /** Drop everything, the index is built again on the next lookup */
+    static synchronized void clear() {
+        postings.clear();
+        ids.clear();
+        files.clear();
+        words.clear();
+        dirty.clear();
+        built = false;
+    }
+
+    private static void refresh() {
+        if (!built) {
+            var started = System.nanoTime();
+            for (var file : FileStore.all()) {
+                index(file);
+            }
+            built = true;
+            LOG.info(String.format("Indexed words of %d files in %d ms", files.size(),
+                    (System.nanoTime() - started) / 1000000));
+        }
+        for (var file : dirty) {
+            forget(file);
+            if (FileStore.contains(file)) {
+                index(file);
+            }
+        }
+        dirty.clear();
+    }
+
+    private static boolean containsAll(int id, String[] parts) {
+        for (var part : parts) {
+            var found = postings.get(part);
+            if (found == null || !found.contains(id)) return false;
+        }
+        return true;
+    }
+
+    private static void index(Path file) {
+        var id = ids.get(file);
+        if (id == null) {
+            id = files.size();
+            ids.put(file, id);
+            files.add(file);
+            words.add(null);
+        }
+        var unique = new LinkedHashSet<String>();
+        tokenize(FileStore.contents(file), unique);
+        var stored = new String[unique.size()];
+        var i = 0;
+        for (var word : unique) {
+            var found = postings.computeIfAbsent(word, Postings::new);
+            found.add(id);
+            stored[i++] = found.word;
+        }
+        words.set(id, stored);
+    }
+
+    private static void forget(Path file) {
+        var id = ids.get(file);
+        if (id == null) return;
+        var stored = words.get(id);
+        if (stored == null) return;
+        for (var word : stored) {
+            var found = postings.get(word);
+            found.remove(id);
+            if (found.size == 0) {
+                postings.remove(word);
+            }
+        }
+        words.set(id, null);
+    }
+
+    /** Whether `text` between `start` and `end` contains every identifier of `word` as a whole word */
+    static boolean mentions(CharSequence text, int start, int end, String word) {
+        var region = text.subSequence(start, end).toString();
+        for (var part : parts(word)) {
+            if (!containsWholeWord(region, part)) return false;
+        }
+        return true;
+    }
+
+    private static boolean containsWholeWord(String text, String word) {
+        for (var at = text.indexOf(word); at != -1; at = text.indexOf(word, at + 1)) {
+            var before = at == 0 || !Character.isJavaIdentifierPart(text.charAt(at - 1));
+            var end = at + word.length();
+            var after = end == text.length() || !Character.isJavaIdentifierPart(text.charAt(end));
+            if (before && after) return true;
+        }
+        return false;
+    }
+
+    /** The identifiers in `word`, which has several when it is a qualified name */
+    static String[] parts(String word) {
+        var parts = new ArrayList<String>();
+        tokenize(word, parts);
+        return parts.toArray(String[]::new);
+    }
+
+    private static void tokenize(CharSequence text, Collection<String> into) {
+        var start = -1;
+        for (var i = 0; i < text.length(); i++) {
+            var isPart = Character.isJavaIdentifierPart(text.charAt(i));
+            if (isPart && start == -1) {
+                start = i;
+            } else if (!isPart && start != -1) {
+                into.add(text.subSequence(start, i).toString());
+                start = -1;
+            }
+        }
+        if (start != -1) {
+            into.add(text.subSequence(start, text.length()).toString());
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,4 @@
+dependencies {
+    api(libs.gson)
+    compileOnly("org.projectlombok:lombok:1.18.20")
+}
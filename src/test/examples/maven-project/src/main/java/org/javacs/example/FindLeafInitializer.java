@@ -0,0 +1,30 @@
+package org.javacs.example;
+
+public class FindLeafInitializer {
+    static String name;
+    private int count;
+
+    static {
+        name = label();
+    }
+
+    {
+        count = start();
+    }
+
+    static String label() {
+        return "initializer";
+    }
+
+    int start() {
+        return 1;
+    }
+
+    void test1() {
+        new FindLeafInitializer();
+    }
+
+    static void test2() {
+        System.out.println(name);
+    }
+}
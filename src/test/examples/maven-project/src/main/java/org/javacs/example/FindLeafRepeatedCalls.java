@@ -0,0 +1,15 @@
+package org.javacs.example;
+
+public class FindLeafRepeatedCalls {
+    private void callee() {}
+
+    private void caller() {
+        callee();
+        callee();
+        callee();
+    }
+
+    public void test1() {
+        caller();
+    }
+}
@@ -0,0 +1,5 @@
+package org.javacs.example;
+
+public class SetUpPublic {
+    public void setUp() { }
+}
@@ -0,0 +1,7 @@
+package org.javacs.example;
+
+public class UseSetUpPublic {
+    void test() {
+        new SetUpPublic().setUp();
+    }
+}
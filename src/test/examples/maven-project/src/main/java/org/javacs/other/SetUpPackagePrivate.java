@@ -0,0 +1,9 @@
+package org.javacs.other;
+
+class SetUpPackagePrivate {
+    void setUp() { }
+
+    void test() {
+        setUp();
+    }
+}
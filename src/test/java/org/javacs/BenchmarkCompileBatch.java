@@ -0,0 +1,39 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Compile a new batch every time, the cost of every search that can't reuse the last batch */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkCompileBatch {
+    private JavaCompilerService compiler;
+    private Path[] one, other;
+    private boolean flip;
+
+    @Setup
+    public void setup() {
+        var finder = new JavaFindReference(FileStoreTest.mavenProjectSrc().toAbsolutePath(), 1);
+        compiler = finder.compiler();
+        one = new Path[] {FindResource.path("/main/java/org/javacs/example/GotoOther.java")};
+        other =
+                new Path[] {
+                    FindResource.path("/main/java/org/javacs/example/FindLeafBase.java"),
+                    FindResource.path("/main/java/org/javacs/example/UseFindLeaf.java")
+                };
+    }
+
+    // With a single slot, switching between two batches means neither is ever reused
+    @Benchmark
+    public int compile() {
+        flip = !flip;
+        try (var task = compiler.compile(flip ? one : other)) {
+            return task.roots.size();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.javacs;
+
+import com.sun.source.util.TreePath;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.Element;
+import org.openjdk.jmh.annotations.*;
+
+/** Scan compiled trees for references, and find the leaves of changes in maven-project from start to end */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkFindReferences {
+    private JavaFindReference finder;
+    private CompileTask task;
+    private Element element;
+    private List<FilePosition> changes;
+
+    @Setup
+    public void setup() {
+        // The scanned batch stays checked out, so searching needs a second slot
+        finder = new JavaFindReference(FileStoreTest.mavenProjectSrc().toAbsolutePath(), 2);
+        var file = FindResource.path("/main/java/org/javacs/example/FindLeafBase.java");
+        var files = finder.compiler().findMemberReferences("org.javacs.example.FindLeafBase", "test1");
+        task = finder.compiler().compile(files);
+        element = NavigationHelper.findElementMethodLevel(task, file, 8, 17);
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        var insideClass = FindResource.path("/main/java/org/javacs/example/FindLeafInsideClass.java");
+        changes =
+                List.of(
+                        new FilePosition(gotoOther, 6, 30),
+                        new FilePosition(insideClass, 15, 13),
+                        new FilePosition(file, 5, 14));
+    }
+
+    @TearDown
+    public void tearDown() {
+        task.close();
+    }
+
+    @Benchmark
+    public List<TreePath> scanReferences() {
+        var paths = new ArrayList<TreePath>();
+        for (var root : task.roots) {
+            new FindReferences(task.task, element).scan(root, paths);
+        }
+        return paths;
+    }
+
+    // The finder keeps its compiled batches and indexes between runs, like a daemon does
+    @Benchmark
+    public Set<String> findLeafReferences() {
+        return finder.findLeafReferences(changes, List.of(), -1);
+    }
+}
@@ -0,0 +1,40 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Parse the files of maven-project and list its packages, the work done before anything is compiled */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkParser {
+    private List<Path> files;
+
+    @Setup
+    public void setup() {
+        FileStore.setWorkspaceRoots(Set.of(FileStoreTest.mavenProjectSrc()));
+        files = new ArrayList<>(FileStore.all());
+    }
+
+    // Parser keeps the last file it parsed, so every file is parsed in turn to parse each of them for real
+    @Benchmark
+    public int parseFile() {
+        var declarations = 0;
+        for (var f : files) {
+            declarations += Parser.parseFile(f).root.getTypeDecls().size();
+        }
+        return declarations;
+    }
+
+    @Benchmark
+    public List<Path> listPackage() {
+        return FileStore.list("org.javacs.example");
+    }
+}
@@ -0,0 +1,56 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Find every match of a word in the sources of this repository, with the byte filter and with Boyer-Moore */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkSearchPaths {
+    // A keyword, a method name, an annotation, the longest name next filters (12 bytes) and a 23 byte name
+    @Param({"if", "get", "Override", "containsWord", "findLeafReferencesBatch"})
+    public String word;
+
+    private List<ByteBuffer> texts;
+    private StringSearch search;
+
+    @Setup
+    public void setup() throws IOException {
+        texts = new ArrayList<>();
+        try (var files = Files.walk(Paths.get("src/main/java"))) {
+            for (var f : (Iterable<Path>) files::iterator) {
+                if (f.toString().endsWith(".java")) texts.add(ByteBuffer.wrap(Files.readAllBytes(f)));
+            }
+        }
+        search = new StringSearch(word);
+    }
+
+    @Benchmark
+    public int filtered() {
+        var found = 0;
+        for (var text : texts) {
+            for (var at = search.nextFiltered(text, 0); at != -1; at = search.nextFiltered(text, at + 1)) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int boyerMoore() {
+        var found = 0;
+        for (var text : texts) {
+            for (var at = search.nextBoyerMoore(text, 0); at != -1; at = search.nextBoyerMoore(text, at + 1)) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,38 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Look for one word in every file of maven-project, like candidate discovery does for every query */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkStringSearch {
+    // A keyword, a method name, a class name and a word that is nowhere
+    @Param({"public", "test", "FindLeafInsideClass", "missingWord"})
+    public String word;
+
+    private List<Path> files;
+
+    @Setup
+    public void setup() {
+        FileStore.setWorkspaceRoots(Set.of(FileStoreTest.mavenProjectSrc()));
+        files = new ArrayList<>(FileStore.all());
+    }
+
+    @Benchmark
+    public int containsWord() {
+        var found = 0;
+        for (var f : files) {
+            if (StringSearch.containsWord(f, word)) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,121 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTest {
+    private Path dir, a, b;
+
+    @Before
+    public void createFiles() throws IOException {
+        dir = Files.createTempDirectory("cache");
+        a = dir.resolve("A.java");
+        b = dir.resolve("B.java");
+        Files.writeString(a, "class A {}\n");
+        Files.writeString(b, "class B {}\n");
+        // The modified time is in the past, so values loaded now are fresh
+        for (var file : List.of(a, b)) {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(60)));
+            FileStore.externalCreate(file);
+        }
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        for (var file : List.of(a, b)) {
+            FileStore.externalDelete(file);
+            Files.deleteIfExists(file);
+        }
+        Files.delete(dir);
+    }
+
+    /** Look up `k`, and tell whether `v` had to be loaded for it */
+    private static <V> boolean loads(Cache<String, V> cache, Path file, String k, V v) {
+        var loaded = new boolean[1];
+        cache.get(file, k, () -> {
+            loaded[0] = true;
+            return v;
+        });
+        return loaded[0];
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        var cache = new Cache<String, Integer>("test", 2, (k, v) -> 1);
+        loads(cache, a, "one", 1);
+        loads(cache, a, "two", 2);
+        assertFalse(loads(cache, a, "one", 1));
+        loads(cache, a, "three", 3);
+
+        assertThat(cache.evictions(), equalTo(1L));
+        assertFalse(loads(cache, a, "one", 1));
+        assertFalse(loads(cache, a, "three", 3));
+        assertTrue(loads(cache, a, "two", 2));
+    }
+
+    @Test
+    public void boundsTotalWeight() {
+        var cache = new Cache<String, String>("test", 10, (k, v) -> v.length());
+        loads(cache, a, "short", "abc");
+        loads(cache, a, "long", "abcdefgh");
+
+        assertThat(cache.weight(), equalTo(8L));
+        assertThat(cache.size(), equalTo(1));
+        assertTrue(loads(cache, a, "short", "abc"));
+    }
+
+    @Test
+    public void changedFileExpiresAllItsKeys() throws IOException {
+        var cache = new Cache<String, Integer>("test", Cache.DEFAULT_MAX_WEIGHT, (k, v) -> 1);
+        loads(cache, a, "one", 1);
+        loads(cache, a, "two", 2);
+        loads(cache, b, "one", 1);
+
+        Files.setLastModifiedTime(a, FileTime.from(Instant.now().plusSeconds(60)));
+        FileStore.externalChange(a);
+
+        assertThat(cache.size(), equalTo(1));
+        assertFalse(loads(cache, b, "one", 1));
+        assertTrue(loads(cache, a, "one", 1));
+    }
+
+    @Test
+    public void deletedFileIsForgotten() throws IOException {
+        var cache = new Cache<String, Integer>("test", Cache.DEFAULT_MAX_WEIGHT, (k, v) -> 1);
+        loads(cache, a, "one", 1);
+        loads(cache, b, "one", 1);
+
+        Files.delete(a);
+        FileStore.externalDelete(a);
+
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        var cache = new Cache<String, Integer>("counted", Cache.DEFAULT_MAX_WEIGHT, (k, v) -> 1);
+        var loads = new int[1];
+        for (var i = 0; i < 3; i++) {
+            var value = cache.get(a, "key", () -> ++loads[0]);
+            assertThat(value, equalTo(1));
+        }
+
+        assertThat(loads[0], equalTo(1));
+        assertThat(cache.misses(), equalTo(1L));
+        assertThat(cache.hits(), equalTo(2L));
+        assertThat(cache.toString(), containsString("counted(size=1"));
+    }
+}
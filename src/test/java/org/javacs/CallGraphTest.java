@@ -0,0 +1,97 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CallGraphTest {
+    private static final JavaFindReference finder = new JavaFindReference(
+            Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 4);
+    private static final JavaFindReference exported = new JavaFindReference(
+            Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 4);
+
+    @BeforeClass
+    public static void exportCallGraph() throws IOException {
+        var file = Files.createTempFile("call-graph", ".bin");
+        try {
+            finder.exportCallGraph(file);
+            exported.useCallGraph(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private Set<String> leaves(String file, int row, int column) {
+        var positions = List.of(new FilePosition(FindResource.path(file), row, column));
+        return exported.findLeafReferences(positions, new ArrayList<String>(), -1);
+    }
+
+    @Test
+    public void findLeavesWithoutCompiling() {
+        var file = "/main/java/org/javacs/example/GotoOther.java";
+        assertThat(leaves(file, 4, 26), contains("org.javacs.example.Goto::test"));
+        assertThat(leaves(file, 8, 1), contains("org.javacs.example.Goto::test"));
+
+        file = "/main/java/org/javacs/example/ConstructorRefs.java";
+        assertThat(leaves(file, 4, 10), contains("org.javacs.example.ConstructorRefs::main"));
+
+        file = "/main/java/org/javacs/other/ImportIndirectly.java";
+        assertThat(leaves(file, 4, 25), contains("org.javacs.example.ReferenceIndirectImport::test"));
+
+        file = "/main/java/org/javacs/example/FindLeafInsideClass.java";
+        assertThat(leaves(file, 15, 13), contains("org.javacs.example.FindLeafInsideClass::test1"));
+        assertThat(leaves(file, 23, 0), containsInAnyOrder("org.javacs.example.FindLeafInsideClass::test1",
+                "org.javacs.example.FindLeafInsideClass::test2"));
+
+        file = "/main/java/org/javacs/other/FindLeafHelper.java";
+        assertThat(leaves(file, 4, 30), contains("org.javacs.example.FindLeafUseHelper::test1"));
+    }
+
+    @Test
+    public void defaultConstructorsImpactEveryInstance() {
+        assertThat(leaves("/main/java/org/javacs/example/FindLeafBase.java", 5, 14),
+                   containsInAnyOrder("org.javacs.example.FindLeafBase::test1",
+                                      "org.javacs.example.UseFindLeaf::test1",
+                                      "org.javacs.example.UseFindLeaf::test2",
+                                      "org.javacs.example.UseFindLeaf::test3",
+                                      "org.javacs.example.FindLeafOverridingDefaultConstructor::test1",
+                                      "org.javacs.example.FindLeafInheritedDefaultConstructor::test1"));
+    }
+
+    @Test
+    public void initializerBlocksAreRunByTheirClass() {
+        var file = "/main/java/org/javacs/example/FindLeafInitializer.java";
+        assertThat(leaves(file, 19, 9), contains("org.javacs.example.FindLeafInitializer::test1"));
+        assertThat(leaves(file, 15, 19), containsInAnyOrder("org.javacs.example.FindLeafInitializer::test1",
+                "org.javacs.example.FindLeafInitializer::test2"));
+    }
+
+    @Test
+    public void matchesTheReferenceWalker() {
+        var positions = new ArrayList<FilePosition>();
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        positions.add(new FilePosition(gotoOther, 6, 30));
+        positions.add(new FilePosition(gotoOther, 12, 15));
+        var insideClass = FindResource.path("/main/java/org/javacs/example/FindLeafInsideClass.java");
+        positions.add(new FilePosition(insideClass, 4, 17));
+        positions.add(new FilePosition(insideClass, 7, 13));
+        positions.add(new FilePosition(FindResource.path("/main/java/org/javacs/other/FindLeafHelper.java"), 13, 8));
+        positions.add(new FilePosition(
+                FindResource.path("/main/java/org/javacs/example/FindLeafRepeatedCalls.java"), 4, 18));
+
+        var fromGraph = exported.findLeafReferencesBatch(positions, List.of("setUp"), -1);
+        var walked = finder.findLeafReferencesBatch(positions, List.of("setUp"), -1);
+        for (var position : positions) {
+            assertThat(position.toString(), fromGraph.get(position), equalTo(walked.get(position)));
+        }
+    }
+}
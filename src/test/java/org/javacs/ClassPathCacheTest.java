@@ -0,0 +1,96 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassPathCacheTest {
+    private Path workspace, jar;
+    private final AtomicInteger inferred = new AtomicInteger();
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = Files.createTempDirectory("class-path-cache");
+        jar = Files.createFile(workspace.resolve("library.jar"));
+        Files.writeString(workspace.resolve("pom.xml"), "<project/>\n");
+        ClassPathCache.clear();
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException {
+        ClassPathCache.clear();
+        try (var walk = Files.walk(workspace)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private Set<Path> classPath(String fingerprint) {
+        return ClassPathCache.get(workspace, "dependency:list", fingerprint, () -> {
+            inferred.incrementAndGet();
+            return new ClassPathCache.Inferred(Set.of(jar), true);
+        });
+    }
+
+    @Test
+    public void warmRunsDontInferAgain() {
+        assertThat(classPath("a"), contains(jar));
+        assertThat(classPath("a"), contains(jar));
+        assertThat(inferred.get(), equalTo(1));
+
+        // Another process finds it on disk
+        ClassPathCache.clear();
+        assertThat(classPath("a"), contains(jar));
+        assertThat(inferred.get(), equalTo(1));
+    }
+
+    @Test
+    public void changedBuildFilesOrMissingJarsInferAgain() throws IOException {
+        classPath("a");
+        classPath("b");
+        assertThat(inferred.get(), equalTo(2));
+
+        Files.delete(jar);
+        ClassPathCache.clear();
+        classPath("b");
+        assertThat(inferred.get(), equalTo(3));
+    }
+
+    @Test
+    public void incompleteResultsInferAgain() {
+        Supplier<ClassPathCache.Inferred> partial = () -> {
+            inferred.incrementAndGet();
+            return new ClassPathCache.Inferred(Set.of(jar), false);
+        };
+        assertThat(ClassPathCache.get(workspace, "dependency:list", "a", partial), contains(jar));
+        assertThat(ClassPathCache.get(workspace, "dependency:list", "a", partial), contains(jar));
+        assertThat(inferred.get(), equalTo(2));
+        assertThat(Files.exists(workspace.resolve(ClassPathCache.DIR_NAME)), equalTo(false));
+    }
+
+    @Test
+    public void fingerprintFollowsEveryPom() throws IOException {
+        var infer = new InferConfig(workspace, Set.of(), workspace.resolve(".m2"), workspace.resolve(".gradle"));
+        var before = infer.mavenFingerprint();
+        assertThat(infer.mavenFingerprint(), equalTo(before));
+
+        var module = Files.createDirectories(workspace.resolve("module"));
+        Files.writeString(module.resolve("pom.xml"), "<project/>\n");
+        var withModule = infer.mavenFingerprint();
+        assertThat(withModule, not(equalTo(before)));
+
+        // Build output is not part of the build
+        Files.createDirectories(workspace.resolve("target/classes"));
+        Files.writeString(workspace.resolve("target/classes/pom.xml"), "<project>copy</project>\n");
+        assertThat(infer.mavenFingerprint(), equalTo(withModule));
+    }
+}
@@ -7,6 +7,7 @@ import java.net.URI;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.util.Collections;
+import java.util.Comparator;
 import org.javacs.guava.ClassPath;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -22,6 +23,23 @@ public class ClassesTest {
         assertThat(empty, not(hasItem("java.util.List")));
     }
 
+    @Test
+    public void jdkClassesSavedOnce() throws Exception {
+        var dir = Files.createTempDirectory("jdk-classes");
+        try {
+            var scanned = ScanClassPath.jdkTopLevelClasses(dir);
+            try (var saved = Files.list(dir)) {
+                assertThat(saved.count(), equalTo(1L));
+            }
+            assertThat(ScanClassPath.jdkTopLevelClasses(dir), equalTo(scanned));
+            assertThat(ScanClassPath.sharedJdkClasses(dir), sameInstance(ScanClassPath.sharedJdkClasses(dir)));
+        } finally {
+            try (var walk = Files.walk(dir)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
     @Test
     public void arrayList() {
         var jdk = ScanClassPath.jdkTopLevelClasses();
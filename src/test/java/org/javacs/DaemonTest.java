@@ -0,0 +1,60 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class DaemonTest {
+
+    @Test
+    public void answersUntilShutdown() throws InterruptedException {
+        var finder = new JavaFindReference(Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 2);
+        try (var daemon = new Daemon(finder, 0)) {
+            var thread = new Thread(daemon::serve);
+            thread.start();
+
+            var file = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+            var find = new Daemon.Request();
+            find.positions.add(file + ":4:26");
+            var response = Daemon.send(daemon.port(), find);
+            assertThat(response.error, nullValue());
+            assertThat(response.methods, contains("org.javacs.example.Goto::test"));
+
+            var invalid = new Daemon.Request();
+            invalid.positions.add(file + ":four");
+            assertThat(Daemon.send(daemon.port(), invalid).error, not(nullValue()));
+
+            var shutdown = new Daemon.Request();
+            shutdown.command = Daemon.SHUTDOWN;
+            assertThat(Daemon.send(daemon.port(), shutdown).error, nullValue());
+            thread.join(10000);
+            assertThat(thread.isAlive(), is(false));
+        }
+    }
+
+    @Test
+    public void silentClientsTimeOut() throws IOException, InterruptedException {
+        var finder = new JavaFindReference(Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 2);
+        try (var daemon = new Daemon(finder, 0)) {
+            daemon.readTimeoutMillis = 200;
+            var thread = new Thread(daemon::serve);
+            thread.start();
+
+            try (var silent = new Socket(InetAddress.getLoopbackAddress(), daemon.port())) {
+                var shutdown = new Daemon.Request();
+                shutdown.command = Daemon.SHUTDOWN;
+                assertThat(Daemon.send(daemon.port(), shutdown).error, nullValue());
+                // The daemon closed the silent connection instead of waiting for it
+                assertThat(silent.getInputStream().read(), equalTo(-1));
+            }
+            thread.join(10000);
+            assertThat(thread.isAlive(), is(false));
+        }
+    }
+}
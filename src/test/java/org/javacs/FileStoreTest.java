@@ -1,10 +1,20 @@
 package org.javacs;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,4 +35,95 @@ public class FileStoreTest {
         var file = FindResource.path("/main/java/org/javacs/example/Goto.java");
         assertThat(FileStore.suggestedPackageName(file), equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void listFollowsPackageChanges() throws IOException {
+        assertThat(FileStore.list("org.javacs.example"),
+                hasItem(FindResource.path("/main/java/org/javacs/example/Goto.java")));
+
+        var file = Files.createTempDirectory("file-store").resolve("Moved.java");
+        Files.writeString(file, "package before.move;\nclass Moved {}\n");
+        try {
+            FileStore.externalCreate(file);
+            assertThat(FileStore.list("before.move"), contains(file));
+
+            Files.writeString(file, "package after.move;\nclass Moved {}\n");
+            FileStore.externalChange(file);
+            assertThat(FileStore.list("before.move"), empty());
+            assertThat(FileStore.list("after.move"), contains(file));
+        } finally {
+            FileStore.externalDelete(file);
+            Files.delete(file);
+        }
+        assertThat(FileStore.list("after.move"), empty());
+    }
+
+    @Test
+    public void refreshFindsChangedFiles() throws IOException {
+        var root = Files.createTempDirectory("file-store-refresh").toRealPath();
+        var a = root.resolve("A.java");
+        var b = root.resolve("B.java");
+        try {
+            Files.writeString(a, "package a;\nclass A {}\n");
+            FileStore.setWorkspaceRoots(Set.of(root));
+            assertThat(FileStore.refresh(), empty());
+
+            Files.writeString(a, "package moved;\nclass A {}\n");
+            Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 10000));
+            Files.writeString(b, "package b;\nclass B {}\n");
+            assertThat(FileStore.refresh(), containsInAnyOrder(a, b));
+            assertThat(FileStore.list("moved"), contains(a));
+            assertThat(FileStore.list("b"), contains(b));
+
+            Files.delete(a);
+            assertThat(FileStore.refresh(), contains(a));
+            assertThat(FileStore.list("moved"), empty());
+        } finally {
+            FileStore.externalDelete(a);
+            FileStore.externalDelete(b);
+            Files.deleteIfExists(a);
+            Files.deleteIfExists(b);
+            Files.delete(root);
+            FileStore.setWorkspaceRoots(Set.of(mavenProjectSrc()));
+        }
+    }
+
+    @Test
+    public void scanSkipsLinkedDirectories() throws IOException {
+        var root = Files.createTempDirectory("file-store-scan");
+        var outside = Files.createTempDirectory("file-store-outside");
+        var created = new ArrayList<Path>();
+        try {
+            for (var i = 0; i < 10; i++) {
+                var dir = Files.createDirectories(root.resolve("p" + i).resolve("sub"));
+                for (var j = 0; j < 100; j++) {
+                    var file = dir.resolve("C" + j + ".java");
+                    Files.writeString(file, "package p" + i + ".sub;\nclass C" + j + " {}\n");
+                    created.add(file);
+                }
+            }
+            Files.writeString(outside.resolve("Linked.java"), "package linked;\nclass Linked {}\n");
+            Files.createSymbolicLink(root.resolve("linked"), outside);
+
+            FileStore.setWorkspaceRoots(Set.of(root));
+            for (var i = 0; i < 10; i++) {
+                assertThat(FileStore.list("p" + i + ".sub"), hasSize(100));
+            }
+            assertThat(FileStore.list("linked"), empty());
+        } finally {
+            for (var file : created) {
+                FileStore.externalDelete(file);
+            }
+            FileStore.setWorkspaceRoots(Set.of(mavenProjectSrc()));
+            delete(root);
+            delete(outside);
+        }
+    }
+
+    /** Delete `dir` and everything in it, without following the link into `outside` */
+    private static void delete(Path dir) throws IOException {
+        try (var walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
 }
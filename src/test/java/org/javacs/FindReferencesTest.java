@@ -7,13 +7,15 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 public class FindReferencesTest {
     private static final JavaFindReference finder = new JavaFindReference(
-            Paths.get("./src/test/examples/maven-project").toAbsolutePath());
+            Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 4);
 
     protected List<String> items(String file, int row, int column) {
         var position = new FilePosition(FindResource.path(file), row, column);
@@ -37,6 +39,15 @@ public class FindReferencesTest {
         assertThat(items("/main/java/org/javacs/example/GotoOther.java", 6, 30), not(empty()));
     }
 
+    @Test
+    public void specialMethodsOfEveryClassShareTheSearch() {
+        assertThat(items("/main/java/org/javacs/other/SetUpPackagePrivate.java", 4, 10),
+                contains("SetUpPackagePrivate.java(7)"));
+        // The package-private setUp above was searched first, which must not hide callers in other packages
+        assertThat(items("/main/java/org/javacs/example/SetUpPublic.java", 4, 17),
+                contains("UseSetUpPublic.java(5)"));
+    }
+
     @Test
     public void findInterfaceReference() {
         assertThat(items("/main/java/org/javacs/example/GotoImplementation.java", 9, 21),
@@ -137,4 +148,42 @@ public class FindReferencesTest {
                                       "org.javacs.example.FindLeafInheritedDefaultConstructor::test1"
                 ));
     }
+
+    @Test
+    public void batchMatchesSinglePositions() {
+        var positions = new ArrayList<FilePosition>();
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        positions.add(new FilePosition(gotoOther, 4, 26));
+        positions.add(new FilePosition(gotoOther, 7, 17));
+        positions.add(new FilePosition(gotoOther, 6, 30));
+        var insideClass = FindResource.path("/main/java/org/javacs/example/FindLeafInsideClass.java");
+        positions.add(new FilePosition(insideClass, 4, 17));
+        positions.add(new FilePosition(insideClass, 15, 13));
+        positions.add(new FilePosition(FindResource.path("/main/java/org/javacs/example/FindLeafBase.java"), 5, 14));
+
+        var batch = finder.findLeafReferencesBatch(positions, new ArrayList<String>(), -1);
+        for (var position : positions) {
+            var single = finder.findLeafReferences(List.of(position), new ArrayList<String>(), -1);
+            assertThat(batch.get(position), equalTo(single));
+        }
+    }
+
+    @Test
+    public void expandEachMethodOnce() {
+        var lookUps = new AtomicInteger();
+        var counting = new JavaFindReference(Paths.get("./src/test/examples/maven-project").toAbsolutePath(), 4) {
+            @Override
+            public Optional<List<Location>> findReferences(FilePosition position) {
+                lookUps.incrementAndGet();
+                return super.findReferences(position);
+            }
+        };
+        var file = FindResource.path("/main/java/org/javacs/example/FindLeafRepeatedCalls.java");
+        try (var walker = new ReferenceWalker(counting, 4)) {
+            var leaves = walker.walk(List.of(new FilePosition(file, 4, 18)), -1);
+            assertThat(leaves, contains(new FilePosition(file, 13, 9)));
+        }
+        // callee, caller once for its three calls, and test1
+        assertThat(lookUps.get(), equalTo(3));
+    }
 }
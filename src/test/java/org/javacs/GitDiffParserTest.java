@@ -1,8 +1,10 @@
 package org.javacs;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Paths;
+import java.util.List;
 import org.junit.Test;
 
 public class GitDiffParserTest {
@@ -27,4 +29,36 @@ public class GitDiffParserTest {
         var changedLines = new GitDiffParser(Paths.get("./src/main/java/org/javacs"), diffStr).parse();
         assertTrue(changedLines.size() == 4);
     }
+
+    @Test
+    public void parseTouchedAndDeletedFiles() {
+        var diffStr = "diff --git a/Added.java b/Added.java\n"
+            + "new file mode 100644\n"
+            + "--- /dev/null\n"
+            + "+++ b/Added.java\n"
+            + "@@ -0,0 +1 @@\n"
+            + "+class Added {}\n"
+            + "diff --git a/Removed.java b/Removed.java\n"
+            + "deleted file mode 100644\n"
+            + "--- a/Removed.java\n"
+            + "+++ /dev/null\n"
+            + "@@ -1 +0,0 @@\n"
+            + "-class Removed {}\n"
+            + "diff --git a/Old.java b/New.java\n"
+            + "--- a/Old.java\n"
+            + "+++ b/New.java\n"
+            + "@@ -1 +1 @@\n"
+            + "--- removed comment\n"
+            + "+class New {}\n"
+            + "diff --git a/README.md b/README.md\n"
+            + "--- a/README.md\n"
+            + "+++ b/README.md\n"
+            + "@@ -1 +1 @@\n"
+            + "-old\n"
+            + "+new\n";
+        var root = Paths.get("./src/main/java/org/javacs").toAbsolutePath().normalize();
+        var parser = new GitDiffParser(root, diffStr);
+        assertEquals(List.of(root.resolve("Added.java"), root.resolve("New.java")), parser.touchedFiles());
+        assertEquals(List.of(root.resolve("Removed.java"), root.resolve("Old.java")), parser.deletedFiles());
+    }
 }
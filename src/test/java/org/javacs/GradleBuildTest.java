@@ -0,0 +1,28 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class GradleBuildTest {
+    @Test
+    public void readDependencies() {
+        var workspace = Paths.get("src/test/examples/gradle-project");
+        assertTrue(GradleBuild.isGradle(workspace));
+        assertThat(
+                GradleBuild.dependencies(workspace),
+                containsInAnyOrder(
+                        "com.external:external-library:1.2",
+                        "junit:junit:4.13.2",
+                        "com.google.code.gson:gson:2.8.5",
+                        "org.projectlombok:lombok:1.18.20",
+                        "org.apache.commons:commons-lang3:3.12.0"));
+    }
+
+    @Test
+    public void notGradle() {
+        assertFalse(GradleBuild.isGradle(Paths.get("src/test/examples/maven-project")));
+    }
+}
@@ -49,6 +49,18 @@ public class IncrementalCompileTest implements TaskListener, DiagnosticListener<
         }
     }
 
+    @Test
+    public void taskPoolLendsSeveralTasks() {
+        var pool = new ReusableCompiler(2);
+        var first = compiler.getStandardFileManager(this, null, Charset.defaultCharset());
+        var second = compiler.getStandardFileManager(this, null, Charset.defaultCharset());
+        try (var a = pool.getTask(first, this, options, null, first.getJavaFileObjects(foo));
+                var b = pool.getTask(second, this, options, null, second.getJavaFileObjects(foo))) {
+            checkInvokeType(a.task);
+            checkInvokeType(b.task);
+        }
+    }
+
     private void checkInvokeType(JavacTask task) {
         task.addTaskListener(this);
         try {
@@ -4,10 +4,14 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.Set;
 
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -19,6 +23,17 @@ public class InferConfigTest {
     private InferConfig both = new InferConfig(workspaceRoot, externalDependencies, mavenHome, gradleHome);
     private InferConfig thisProject = new InferConfig(Paths.get("."), Set.of());
 
+    /** The class path of gradle-project is cached inside it, which must not outlive the test */
+    @After
+    public void deleteClassPathCache() throws IOException {
+        ClassPathCache.clear();
+        var cache = Paths.get("src/test/examples/gradle-project").resolve(ClassPathCache.DIR_NAME);
+        if (!Files.exists(cache)) return;
+        try (var walk = Files.walk(cache)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
     @Test
     public void mavenClassPath() {
         assertThat(
@@ -37,6 +52,21 @@ public class InferConfigTest {
         // v1.1 should be ignored
     }
 
+    @Test
+    public void gradleClassPath() {
+        var gradle = new InferConfig(Paths.get("src/test/examples/gradle-project"), Set.of(), mavenHome, gradleHome);
+        assertThat(
+                gradle.classPath(),
+                contains(
+                        gradleHome.resolve(
+                                "caches/modules-2/files-2.1/com.external/external-library/1.2/xxx/external-library-1.2.jar")));
+        assertThat(
+                gradle.buildDocPath(),
+                contains(
+                        gradleHome.resolve(
+                                "caches/modules-2/files-2.1/com.external/external-library/1.2/yyy/external-library-1.2-sources.jar")));
+    }
+
     @Test
     public void dependencyList() {
         assertThat(InferConfig.mvnDependencies(Paths.get("pom.xml"), "dependency:list"), not(empty()));
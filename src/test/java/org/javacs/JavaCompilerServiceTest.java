@@ -3,6 +3,10 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.tree.JCTree;
 import java.nio.file.*;
 import java.util.*;
 import org.junit.*;
@@ -20,4 +24,188 @@ public class JavaCompilerServiceTest {
     public void setWorkspaceRoot() {
         FileStore.setWorkspaceRoots(Set.of(simpleProjectSrc()));
     }
+
+    @Test
+    public void onlyBatchFilesKeepTheirBodies() throws Exception {
+        var dir = Files.createTempDirectory("erase-bodies");
+        var implicit = dir.resolve("Implicit.java");
+        var root = dir.resolve("Root.java");
+        // Every body of Implicit but the super call fails to compile, only its declarations are needed
+        Files.writeString(
+                implicit,
+                "class Implicit extends Base {\n"
+                        + "    final int x;\n"
+                        + "    Implicit(int x) {\n"
+                        + "        super(x + 1);\n"
+                        + "        this.x = missing();\n"
+                        + "    }\n"
+                        + "    int twice() {\n"
+                        + "        return missing() * 2;\n"
+                        + "    }\n"
+                        + "    void log() {\n"
+                        + "        missing();\n"
+                        + "    }\n"
+                        + "}\n"
+                        + "class Base {\n"
+                        + "    Base(int x) {}\n"
+                        + "}\n");
+        Files.writeString(
+                root,
+                "class Root {\n"
+                        + "    int run() {\n"
+                        + "        new Implicit(1).log();\n"
+                        + "        return new Implicit(2).twice() + missing();\n"
+                        + "    }\n"
+                        + "}\n");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try (var task = compiler.compile(root)) {
+            var errors = new ArrayList<String>();
+            for (var d : task.diagnostics) {
+                if (d.getKind() == javax.tools.Diagnostic.Kind.ERROR) {
+                    errors.add(Paths.get(d.getSource().toUri()).getFileName() + ":" + d.getLineNumber());
+                }
+            }
+            assertThat(errors, contains("Root.java:4"));
+        } finally {
+            Files.delete(implicit);
+            Files.delete(root);
+            Files.delete(dir);
+            FileStore.externalDelete(implicit);
+            FileStore.externalDelete(root);
+        }
+    }
+
+    @Test
+    public void attributeOnlyClassesThatMentionTheWord() throws Exception {
+        var dir = Files.createTempDirectory("compile-mentioning");
+        var base = dir.resolve("Base.java");
+        var other = dir.resolve("Other.java");
+        var uses = dir.resolve("Uses.java");
+        var sub = dir.resolve("Sub.java");
+        Files.writeString(base, "class Base {\n    int base() { return 1; }\n}\n");
+        Files.writeString(other, "class Other {\n    int run() { return new Base().base(); }\n}\n");
+        Files.writeString(uses, "class Uses {\n    void foo() {}\n    void call() { foo(); }\n}\n");
+        Files.writeString(sub, "class Sub extends Base {\n    int twice() { return base() * 2; }\n}\n");
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try {
+            try (var task = compiler.compileMentioning("foo", uses, base, other)) {
+                assertThat(resolves(task, uses, "foo"), equalTo(true));
+                assertThat(resolves(task, other, "Base"), equalTo(false));
+            }
+            // The same batch attributes the rest when it is asked for everything
+            try (var task = compiler.compile(uses, base, other)) {
+                assertThat(resolves(task, other, "Base"), equalTo(true));
+            }
+            // Classes a batch left alone can still be supertypes in later batches
+            try (var task = compiler.compileMentioning("foo", uses, base, other)) {}
+            try (var task = compiler.compile(sub)) {
+                assertThat(resolves(task, sub, "base"), equalTo(true));
+            }
+        } finally {
+            for (var file : List.of(base, other, uses, sub)) {
+                Files.delete(file);
+                FileStore.externalDelete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void memberCandidatesCanSeeTheOwner() throws Exception {
+        var dir = Files.createTempDirectory("member-candidates");
+        var sources =
+                Map.of(
+                        "a/Hidden.java", "package a;\nclass Hidden {\n    void run() {}\n}\n",
+                        "a/Open.java", "package a;\npublic class Open {\n    public void run() {}\n}\n",
+                        "a/Guarded.java", "package a;\npublic class Guarded {\n    protected void run() {}\n}\n",
+                        "a/Same.java", "package a;\nclass Same {\n    void call(Hidden h) { h.run(); }\n}\n",
+                        "b/Child.java", "package b;\nclass Child extends a.Guarded {\n    void call() { run(); }\n}\n",
+                        "b/Other.java", "package b;\nclass Other {\n    void run() {}\n}\n");
+        var files = new ArrayList<Path>();
+        for (var e : sources.entrySet()) {
+            var file = dir.resolve(e.getKey());
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, e.getValue());
+            files.add(file);
+        }
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        try {
+            assertThat(
+                    names(compiler.findMemberReferences("a.Hidden", "run")),
+                    containsInAnyOrder("Hidden", "Open", "Guarded", "Same"));
+            assertThat(
+                    names(compiler.findMemberReferences("a.Guarded", "run")),
+                    containsInAnyOrder("Hidden", "Open", "Guarded", "Same", "Child"));
+            assertThat(names(compiler.findMemberReferences("a.Open", "run")), hasItems("Child", "Other"));
+        } finally {
+            for (var file : files) {
+                Files.delete(file);
+                FileStore.externalDelete(file);
+            }
+            Files.delete(dir.resolve("a"));
+            Files.delete(dir.resolve("b"));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void memberCandidatesOfEveryClassIgnoreModules() throws Exception {
+        var dir = Files.createTempDirectory("member-modules");
+        var sources =
+                Map.of(
+                        "a/src/a/First.java", "package a;\npublic class First {\n    public void setUpModule() {}\n}\n",
+                        "b/src/b/Second.java",
+                        "package b;\npublic class Second {\n    public void setUpModule() {}\n}\n",
+                        "b/src/b/UseSecond.java",
+                        "package b;\nclass UseSecond {\n    void call() { new Second().setUpModule(); }\n}\n");
+        var files = new ArrayList<Path>();
+        for (var e : sources.entrySet()) {
+            var file = dir.resolve(e.getKey());
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, e.getValue());
+            files.add(file);
+        }
+        FileStore.setWorkspaceRoots(Set.of(dir));
+        // Neither module depends on the other
+        var modules = new ModuleGraph(Map.of(dir.resolve("a"), Set.of(), dir.resolve("b"), Set.of()));
+        var compiler = new JavaCompilerService(Set.of(), Set.of(), Set.of(), 1, modules);
+        try {
+            assertThat(names(compiler.findMemberReferences("a.First", "setUpModule")), contains("First"));
+            // Every class shares the candidates of a member name, so the module of the first one can't prune them
+            assertThat(
+                    names(compiler.findMemberReferences("setUpModule")),
+                    containsInAnyOrder("First", "Second", "UseSecond"));
+        } finally {
+            for (var file : files) {
+                Files.delete(file);
+                FileStore.externalDelete(file);
+            }
+            try (var walk = Files.walk(dir)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    private static List<String> names(Path[] files) {
+        var names = new ArrayList<String>();
+        for (var f : files) {
+            names.add(f.getFileName().toString().replace(".java", ""));
+        }
+        return names;
+    }
+
+    /** Whether the first identifier called `name` in `file` was attributed, without attributing it on the way */
+    private static boolean resolves(CompileTask task, Path file, String name) {
+        var found = new ArrayList<TreePath>();
+        new TreePathScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier(IdentifierTree t, Void __) {
+                if (t.getName().contentEquals(name)) {
+                    found.add(getCurrentPath());
+                }
+                return null;
+            }
+        }.scan(task.root(file), null);
+        return ((JCTree.JCIdent) found.get(0).getLeaf()).sym != null;
+    }
 }
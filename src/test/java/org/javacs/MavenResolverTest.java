@@ -0,0 +1,131 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MavenResolverTest {
+    private Path workspace, repository;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = Files.createTempDirectory("maven-resolver");
+        repository = workspace.resolve("repository");
+        library("a", "1.0", dependency("b", "1.0", "") + dependency("c", "1.0", "<optional>true</optional>")
+                + dependency("d", "1.0", "<scope>test</scope>") + dependency("e", "1.0", ""));
+        library("b", "1.0", "");
+        library("b", "2.0", "");
+        library("c", "1.0", "");
+        library("d", "1.0", "");
+        library("e", "1.0", "");
+        library("f", "1.0", "");
+        library("f", "1.5", "");
+        library("f", "2.0", "");
+        Files.writeString(workspace.resolve("pom.xml"), project("parent", "<packaging>pom</packaging>"
+                + "<modules><module>app</module></modules>"
+                + "<properties><a.version>1.0</a.version></properties>"
+                + "<dependencyManagement><dependencies>" + dependency("b", "2.0", "")
+                + "</dependencies></dependencyManagement>"));
+        Files.createDirectories(workspace.resolve("app"));
+        Files.writeString(workspace.resolve("app/pom.xml"), "<project><parent><groupId>org.example</groupId>"
+                + "<artifactId>parent</artifactId><version>1.0</version></parent>"
+                + "<artifactId>app</artifactId><dependencies>"
+                + dependency("a", "${a.version}", "<exclusions><exclusion><groupId>org.example</groupId>"
+                        + "<artifactId>e</artifactId></exclusion></exclusions>")
+                + dependency("f", "[1.0,2.0)", "<scope>test</scope>")
+                + "</dependencies></project>");
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException {
+        try (var walk = Files.walk(workspace)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private static String dependency(String artifactId, String version, String more) {
+        return "<dependency><groupId>org.example</groupId><artifactId>" + artifactId + "</artifactId><version>"
+                + version + "</version>" + more + "</dependency>";
+    }
+
+    private static String project(String artifactId, String more) {
+        return "<project><groupId>org.example</groupId><artifactId>" + artifactId
+                + "</artifactId><version>1.0</version>" + more + "</project>";
+    }
+
+    private void library(String artifactId, String version, String dependencies) throws IOException {
+        var dir = repository.resolve("org/example").resolve(artifactId).resolve(version);
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve(artifactId + "-" + version + ".pom"),
+                project(artifactId, "<dependencies>" + dependencies + "</dependencies>").replace(
+                        "<version>1.0</version><dependencies>", "<version>" + version + "</version><dependencies>"));
+        Files.createFile(dir.resolve(artifactId + "-" + version + ".jar"));
+    }
+
+    private Path jar(String artifactId, String version) {
+        return repository.resolve("org/example").resolve(artifactId).resolve(version)
+                .resolve(artifactId + "-" + version + ".jar");
+    }
+
+    @Test
+    public void resolveLikeMaven() {
+        var resolver = new MavenResolver(repository);
+        var found = resolver.classPath(workspace.resolve("pom.xml"));
+        // b is managed by the parent, c is optional, d is a test dependency of a, e is excluded
+        assertThat(found, containsInAnyOrder(jar("a", "1.0"), jar("b", "2.0"), jar("f", "1.5")));
+        assertThat(resolver.missing, empty());
+    }
+
+    @Test
+    public void reportMissingArtifacts() throws IOException {
+        Files.delete(jar("b", "2.0"));
+        var resolver = new MavenResolver(repository);
+        resolver.classPath(workspace.resolve("pom.xml"));
+        assertThat(resolver.missing, contains("org.example:b:2.0"));
+    }
+
+    @Test
+    public void applyDefaultProfilesAndReportTheOthers() throws IOException {
+        var app = workspace.resolve("app/pom.xml");
+        Files.writeString(app, "<project><parent><groupId>org.example</groupId><artifactId>parent</artifactId>"
+                + "<version>1.0</version></parent><artifactId>app</artifactId><profiles>"
+                + "<profile><id>default</id><activation><activeByDefault>true</activeByDefault></activation>"
+                + "<dependencies>" + dependency("c", "1.0", "") + "</dependencies></profile>"
+                + "<profile><id>jdk</id><activation><jdk>[11,)</jdk></activation>"
+                + "<dependencies>" + dependency("d", "1.0", "") + "</dependencies></profile>"
+                + "<profile><id>asked</id><dependencies>" + dependency("e", "1.0", "") + "</dependencies></profile>"
+                + "</profiles></project>");
+        var resolver = new MavenResolver(repository);
+        var found = resolver.classPath(workspace.resolve("pom.xml"));
+        assertThat(found, contains(jar("c", "1.0")));
+        assertThat(resolver.missing, contains("profile jdk of " + app));
+    }
+
+    @Test
+    public void compareVersions() {
+        assertThat(MavenResolver.compareVersions("1.10", "1.9"), greaterThan(0));
+        assertThat(MavenResolver.compareVersions("1.0", "1.0-beta"), greaterThan(0));
+        assertThat(MavenResolver.compareVersions("1.0.1", "1.0"), greaterThan(0));
+        assertThat(MavenResolver.inRange("1.5", "[1.0,2.0)"), equalTo(true));
+        assertThat(MavenResolver.inRange("2.0", "[1.0,2.0)"), equalTo(false));
+        assertThat(MavenResolver.inRange("1.0", "[1.0]"), equalTo(true));
+    }
+
+    @Test
+    public void thisProjectLikeDependencyList() {
+        var repository = Paths.get(System.getProperty("user.home")).resolve(".m2/repository");
+        var resolver = new MavenResolver(repository);
+        var found = resolver.classPath(Paths.get("pom.xml"));
+        assertThat(resolver.missing, empty());
+        assertThat(new HashSet<>(found), equalTo(InferConfig.mvnDependencies(Paths.get("pom.xml"), "dependency:list")));
+    }
+}
@@ -0,0 +1,84 @@
+package org.javacs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModuleGraphTest {
+    private Path workspace;
+
+    @Before
+    public void createReactor() throws IOException {
+        workspace = Files.createTempDirectory("module-graph");
+        Files.writeString(workspace.resolve("pom.xml"), "<project><groupId>org.example</groupId>"
+                + "<artifactId>parent</artifactId><version>1.0</version><packaging>pom</packaging><modules>"
+                + "<module>a</module><module>b</module><module>c</module><module>d</module></modules></project>");
+        module("a", "");
+        module("b", dependency("a", ""));
+        module("c", dependency("b", "<scope>test</scope>"));
+        module("d", "");
+    }
+
+    @After
+    public void deleteReactor() throws IOException {
+        try (var walk = Files.walk(workspace)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private static String dependency(String artifactId, String more) {
+        return "<dependency><groupId>org.example</groupId><artifactId>" + artifactId
+                + "</artifactId><version>${project.version}</version>" + more + "</dependency>";
+    }
+
+    private void module(String name, String dependencies) throws IOException {
+        Files.createDirectories(workspace.resolve(name));
+        Files.writeString(workspace.resolve(name).resolve("pom.xml"), "<project><parent><groupId>org.example</groupId>"
+                + "<artifactId>parent</artifactId><version>1.0</version></parent><artifactId>" + name
+                + "</artifactId><dependencies>" + dependencies + "</dependencies></project>");
+    }
+
+    private Path source(String module) {
+        return workspace.resolve(module).resolve("src/main/java/org/example/Example.java");
+    }
+
+    @Test
+    public void mavenDependents() {
+        var home = workspace.resolve("home");
+        var modules = new InferConfig(workspace, Set.of(), home, home).moduleGraph();
+        assertEquals(5, modules.size());
+        var canReferToA = modules.canRefer(source("a"));
+        assertTrue(canReferToA.test(source("a")));
+        assertTrue(canReferToA.test(source("b")));
+        assertTrue(canReferToA.test(source("c")));
+        assertFalse(canReferToA.test(source("d")));
+        assertFalse(modules.canRefer(source("c")).test(source("b")));
+        assertFalse(modules.canRefer(source("d")).test(source("a")));
+    }
+
+    @Test
+    public void mavenModulesMatchWhateverVersion() throws IOException {
+        module("d", dependency("a", "").replace("${project.version}", "0.9-SNAPSHOT"));
+        var home = workspace.resolve("home");
+        var modules = new InferConfig(workspace, Set.of(), home, home).moduleGraph();
+        assertTrue(modules.canRefer(source("a")).test(source("d")));
+    }
+
+    @Test
+    public void gradleDependents() {
+        var workspace = Paths.get("src/test/examples/gradle-project");
+        var modules = new ModuleGraph(GradleBuild.projectDependencies(workspace));
+        var core = workspace.resolve("lib/core/src/main/java/Core.java");
+        var app = workspace.resolve("app/src/main/java/App.java");
+        assertTrue(modules.canRefer(core).test(app));
+        assertFalse(modules.canRefer(app).test(core));
+    }
+}
@@ -0,0 +1,91 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ReferenceIndexTest {
+    private static final Path workspace = Paths.get("./src/test/examples/maven-project").toAbsolutePath();
+    private static final JavaFindReference plain = new JavaFindReference(workspace);
+    private static Path indexDir;
+
+    @BeforeClass
+    public static void createIndexDir() throws IOException {
+        indexDir = Files.createTempDirectory("reference-index");
+    }
+
+    private List<String> items(JavaFindReference finder, String file, int row, int column) {
+        var position = new FilePosition(FindResource.path(file), row, column);
+        var locations = finder.findReferences(position).orElse(List.of());
+        var strings = new ArrayList<String>();
+        for (var l : locations) {
+            strings.add(String.format("%s(%d:%d)", StringSearch.fileName(l.uri), l.range.start.line + 1,
+                    l.range.start.character + 1));
+        }
+        return strings;
+    }
+
+    private void assertSameAsCompiler(JavaFindReference indexed) {
+        var gotoOther = "/main/java/org/javacs/example/GotoOther.java";
+        int[][] members = {{4, 26}, {5, 19}, {6, 26}, {9, 19}, {12, 12}};
+        for (var member : members) {
+            assertThat(items(indexed, gotoOther, member[0], member[1]),
+                    equalTo(items(plain, gotoOther, member[0], member[1])));
+        }
+        var stacked = "/main/java/org/javacs/example/StackedFieldReferences.java";
+        assertThat(items(indexed, stacked, 4, 12), contains("StackedFieldReferences.java(8:9)"));
+    }
+
+    @Test
+    public void warmIndexAnswersLikeCompiler() {
+        var cold = new JavaFindReference(workspace);
+        cold.useIndex(indexDir);
+        assertSameAsCompiler(cold);
+        cold.saveIndex();
+        assertThat(Files.exists(indexDir.resolve("references.json")), is(true));
+
+        var warm = new JavaFindReference(workspace);
+        warm.useIndex(indexDir);
+        assertSameAsCompiler(warm);
+    }
+
+    @Test
+    public void trustOnlyTheCommitTheIndexWasSavedAt() throws IOException {
+        var dir = Files.createTempDirectory("reference-index");
+        ReferenceIndex.load(dir).save("saved");
+        var index = ReferenceIndex.load(dir);
+        var compiler = plain.compiler();
+        index.update(compiler, List.of(), List.of(), "other");
+        assertThat(index.isTrusted(), is(false));
+        index.update(compiler, List.of(), List.of(), null);
+        assertThat(index.isTrusted(), is(false));
+        index.update(compiler, List.of(), List.of(), "saved");
+        assertThat(index.isTrusted(), is(true));
+        index.endRequest();
+        assertThat(index.isTrusted(), is(false));
+        Files.delete(dir.resolve("references.json"));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void overloadsAreKeptApart() {
+        var indexed = new JavaFindReference(workspace);
+        indexed.useIndex(indexDir);
+        var file = "/main/java/org/javacs/example/GotoOverload.java";
+        assertThat(items(indexed, file, 12, 17),
+                containsInAnyOrder("GotoOverload.java(8:9)", "GotoOverloadInOtherFile.java(6:9)"));
+        assertThat(items(indexed, file, 16, 17),
+                containsInAnyOrder("GotoOverload.java(9:9)", "GotoOverloadInOtherFile.java(7:9)"));
+        assertThat(items(indexed, file, 4, 16),
+                containsInAnyOrder("GotoOverload.java(7:9)", "GotoOverloadInOtherFile.java(5:9)"));
+    }
+}
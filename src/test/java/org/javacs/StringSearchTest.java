@@ -3,6 +3,13 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 
 public class StringSearchTest {
@@ -35,6 +42,24 @@ public class StringSearchTest {
         testNext("at that", "which finally halts.  at that point", 22);
     }
 
+    @Test
+    public void nextMatchesIndexOf() {
+        var random = new Random(42);
+        for (var n = 0; n < 2000; n++) {
+            var text = randomText(random, random.nextInt(100));
+            var pattern = randomText(random, 1 + random.nextInt(14));
+            testNext(pattern, text, text.indexOf(pattern));
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        var text = new StringBuilder();
+        for (var i = 0; i < length; i++) {
+            text.append("ab.".charAt(random.nextInt(3)));
+        }
+        return text.toString();
+    }
+
     @Test
     public void testNextWord() {
         testNextWord("", "", 0);
@@ -77,4 +102,54 @@ public class StringSearchTest {
         assertTrue(StringSearch.matchesPartialName("foobar", "foo"));
         assertFalse(StringSearch.matchesPartialName("foo", "foobar"));
     }
+
+    @Test
+    public void findManyWordsAtOnce() {
+        var search = new MultiWordSearch(List.of("he", "she", "his", "hers", "shell", "a.b"));
+        assertThat(search.find("ushers"), empty());
+        assertThat(search.find("she sells a shell"), contains("she", "shell"));
+        assertThat(search.find("hers,his(he)"), contains("he", "his", "hers"));
+        assertThat(search.find("x = a.b.c;"), contains("a.b"));
+        assertThat(search.find("h_e $he he1 \u00e9he"), empty());
+        assertThat(new MultiWordSearch(List.of("")).find("abc"), empty());
+    }
+
+    @Test
+    public void findManyWordsLikeOneWord() {
+        var words = List.of("abc", "d", "nan", "bcd", "aa", "a", "ab");
+        var texts = List.of("", "abc", "abc d efg", "banana", "ba nan a", "a bcd", "aa a", "a aa", "abcd", "x.ab(c)");
+        for (var text : texts) {
+            var expected = new HashSet<String>();
+            for (var word : words) {
+                if (new StringSearch(word).nextWord(text) != -1) expected.add(word);
+            }
+            assertThat(text, new MultiWordSearch(words).find(text), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void searchFilesOfAnySizeInParallel() throws Exception {
+        var small = Files.createTempFile("small", ".java");
+        var large = Files.createTempFile("large", ".java");
+        Files.writeString(small, "class Small { int smallWord; }\n");
+        // Past the end of what used to be read from every file
+        Files.writeString(large, "// padding\n".repeat(200_000) + "class Large { int largeWord; }\n");
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            var searches = new ArrayList<Callable<Boolean>>();
+            for (var i = 0; i < 100; i++) {
+                searches.add(() -> StringSearch.containsWord(small, "smallWord"));
+                searches.add(() -> StringSearch.containsWord(large, "largeWord"));
+                searches.add(() -> !StringSearch.containsWord(small, "largeWord"));
+                searches.add(() -> !StringSearch.containsWord(large, "smallWord"));
+            }
+            for (var found : pool.invokeAll(searches)) {
+                assertTrue(found.get());
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(small);
+            Files.delete(large);
+        }
+    }
 }
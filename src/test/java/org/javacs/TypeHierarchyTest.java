@@ -0,0 +1,90 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypeHierarchyTest {
+    private Path dir;
+    private final List<Path> files = new ArrayList<>();
+
+    @Before
+    public void createWorkspace() throws IOException {
+        dir = Files.createTempDirectory("type-hierarchy");
+        var sources =
+                Map.of(
+                        "a/Shape.java", "package a;\npublic interface Shape {\n    interface Round extends Shape {}\n}\n",
+                        "a/Base.java", "package a;\npublic abstract class Base<T> implements Shape {}\n",
+                        "b/Circle.java",
+                                "package b;\nimport a.*;\nclass Circle extends Base<String> implements Shape.Round {\n"
+                                        + "    static class Unit extends Circle {}\n}\n",
+                        "b/Square.java", "package b;\nclass Square extends a.Base<Integer> {}\n",
+                        "b/Named.java", "package b;\nimport java.util.*;\nclass Named extends ArrayList<String> {}\n");
+        for (var e : sources.entrySet()) {
+            var file = dir.resolve(e.getKey());
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, e.getValue());
+            files.add(file);
+        }
+        FileStore.setWorkspaceRoots(Set.of(dir));
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException {
+        for (var file : files) {
+            FileStore.externalDelete(file);
+            Files.deleteIfExists(file);
+        }
+        Files.delete(dir.resolve("a"));
+        Files.delete(dir.resolve("b"));
+        Files.delete(dir);
+        FileStore.setWorkspaceRoots(Set.of(FileStoreTest.mavenProjectSrc()));
+    }
+
+    @Test
+    public void resolvesImportedNestedAndQualifiedSupertypes() {
+        assertThat(TypeHierarchy.subtypes("a.Base"), contains("b.Circle", "b.Square"));
+        assertThat(TypeHierarchy.subtypes("a.Shape"), contains("a.Base", "a.Shape.Round"));
+        assertThat(TypeHierarchy.subtypes("b.Circle"), contains("b.Circle.Unit"));
+        assertThat(TypeHierarchy.supertypes("b.Circle"), containsInAnyOrder("a.Base", "a.Shape.Round"));
+    }
+
+    @Test
+    public void answersTransitiveQueries() {
+        assertThat(
+                TypeHierarchy.allSubtypes("a.Shape"),
+                containsInAnyOrder("a.Base", "a.Shape.Round", "b.Circle", "b.Square", "b.Circle.Unit"));
+        assertThat(
+                TypeHierarchy.allSupertypes("b.Circle.Unit"),
+                containsInAnyOrder("b.Circle", "a.Base", "a.Shape.Round", "a.Shape"));
+    }
+
+    @Test
+    public void typesOutsideTheWorkspaceCouldBeAnyImportOnDemand() {
+        assertThat(TypeHierarchy.subtypes("java.util.ArrayList"), contains("b.Named"));
+        assertThat(TypeHierarchy.subtypes("java.lang.ArrayList"), contains("b.Named"));
+    }
+
+    @Test
+    public void followsFileStoreChanges() throws IOException {
+        assertThat(TypeHierarchy.subtypes("a.Base"), hasItem("b.Square"));
+        var square = dir.resolve("b/Square.java");
+        Files.writeString(square, "package b;\nclass Square implements a.Shape {}\n");
+        FileStore.externalChange(square);
+        assertThat(TypeHierarchy.subtypes("a.Base"), contains("b.Circle"));
+        assertThat(TypeHierarchy.subtypes("a.Shape"), hasItem("b.Square"));
+
+        FileStore.externalDelete(square);
+        assertThat(TypeHierarchy.subtypes("a.Shape"), not(hasItem("b.Square")));
+    }
+}
@@ -0,0 +1,76 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WordIndexTest {
+
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(FileStoreTest.mavenProjectSrc()));
+    }
+
+    @Test
+    public void parts() {
+        assertThat(WordIndex.parts("org.javacs.example"), arrayContaining("org", "javacs", "example"));
+        assertThat(WordIndex.parts("field"), arrayContaining("field"));
+        assertThat(WordIndex.parts(""), emptyArray());
+    }
+
+    @Test
+    public void candidatesContainWholeWordsOnly() {
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        var gotoFile = FindResource.path("/main/java/org/javacs/example/Goto.java");
+        assertThat(WordIndex.candidates("fieldStatic"), hasItems(gotoOther, gotoFile));
+        assertThat(WordIndex.candidates("ieldStati"), empty());
+        for (var file : WordIndex.candidates("fieldStatic")) {
+            assertTrue(StringSearch.containsWord(file, "fieldStatic"));
+        }
+    }
+
+    @Test
+    public void qualifiedNamesAreCheckedAgainstText() {
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        assertTrue(WordIndex.containsWord(gotoOther, "org.javacs.example"));
+        assertFalse(WordIndex.containsWord(gotoOther, "example.javacs"));
+        assertThat(WordIndex.candidates("org.javacs.example"), hasItem(gotoOther));
+    }
+
+    @Test
+    public void oneSearchServesEveryFile() {
+        var gotoOther = FindResource.path("/main/java/org/javacs/example/GotoOther.java");
+        var helper = FindResource.path("/main/java/org/javacs/other/FindLeafHelper.java");
+        var search = new MultiWordSearch(List.of("org.javacs.example", "org.javacs.other", "fieldStatic"));
+        assertThat(WordIndex.containedWords(gotoOther, search),
+                containsInAnyOrder("org.javacs.example", "fieldStatic"));
+        assertThat(WordIndex.containedWords(helper, search), contains("org.javacs.other"));
+    }
+
+    @Test
+    public void followsFileStoreChanges() throws IOException {
+        var dir = Files.createTempDirectory("word-index");
+        var file = dir.resolve("Added.java");
+        Files.writeString(file, "class Added { int addedOnlyHere; }");
+        WordIndex.candidates("warmUp");
+        try {
+            FileStore.externalCreate(file);
+            assertThat(WordIndex.candidates("addedOnlyHere"), contains(file));
+
+            Files.writeString(file, "class Added { int changedOnlyHere; }");
+            FileStore.externalChange(file);
+            assertThat(WordIndex.candidates("addedOnlyHere"), empty());
+            assertThat(WordIndex.candidates("changedOnlyHere"), contains(file));
+        } finally {
+            FileStore.externalDelete(file);
+            Files.delete(file);
+        }
+        assertThat(WordIndex.candidates("changedOnlyHere"), empty());
+    }
+}